@@ -15,9 +15,11 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 /**
  * The AIsolver class that uses Artificial Intelligence to estimate the next move.
@@ -41,6 +43,68 @@ public class AIsolver {
         USER
     }
     
+    /**
+     * Score of a lost game. The heuristic score is never negative, so a search
+     * returns this score only when every line loses against the worst spawns.
+     */
+    public static final int LOSS_SCORE = -1;
+    
+    /**
+     * Number of nodes searched by each thread so far
+     */
+    private static final ThreadLocal<long[]> NODE_COUNT = ThreadLocal.withInitial(() -> new long[1]);
+    
+    /**
+     * The board and the score of the last search of each thread
+     */
+    private static final ThreadLocal<Object[]> LAST_SEARCH = ThreadLocal.withInitial(() -> new Object[2]);
+    
+    /**
+     * Cache of search results shared by all threads, or null. It is configured
+     * with -Dtt.size and -Dtt.file, see TranspositionTable.fromProperties().
+     */
+    private static volatile TranspositionTable transpositionTable = openTranspositionTable();
+    
+    private static TranspositionTable openTranspositionTable() {
+        try {
+            return TranspositionTable.fromProperties();
+        }
+        catch(IOException e) {
+            System.out.println("Transposition table not opened: " + e);
+            return null;
+        }
+    }
+    
+    /**
+     * Getter for the transposition table.
+     * 
+     * @return the table or null
+     */
+    public static TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+    
+    /**
+     * Returns the score of the last search of the current thread if it was a
+     * search of the given board.
+     * 
+     * @param theBoard
+     * @return the score or null
+     */
+    public static Integer getLastScore(Board theBoard) {
+        Object[] lastSearch = LAST_SEARCH.get();
+        return (lastSearch[0]==theBoard)?(Integer)lastSearch[1]:null;
+    }
+    
+    /**
+     * Getter for the number of nodes searched by the current thread so far.
+     * 
+     * @return 
+     */
+    public static long getNodeCount() {
+        return NODE_COUNT.get()[0];
+    }
+    
     /**
      * Method that finds the best next move.
      * 
@@ -50,11 +114,60 @@ public class AIsolver {
      * @throws CloneNotSupportedException 
      */
     public static Direction findBestMove(Board theBoard, int depth) throws CloneNotSupportedException {
+        return findBestMove(theBoard, depth, HeuristicWeights.DEFAULT);
+    }
+    
+    /**
+     * Method that finds the best next move with the given heuristic weights.
+     * 
+     * @param theBoard
+     * @param depth
+     * @param weights
+     * @return
+     * @throws CloneNotSupportedException 
+     */
+    public static Direction findBestMove(Board theBoard, int depth, HeuristicWeights weights) throws CloneNotSupportedException {
         //Map<String, Object> result = minimax(theBoard, depth, Player.USER);
         
-        Map<String, Object> result = alphabeta(theBoard, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, Player.USER);
+        Object event = Profiling.beginSearch();
+        long start = System.nanoTime();
+        long[] nodes = NODE_COUNT.get();
+        long startNodes = nodes[0];
+        Map<String, Object> result = alphabeta(theBoard, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, Player.USER, weights, nodes);
+        Metrics.INSTANCE.recordSearch(System.nanoTime()-start, nodes[0]-startNodes);
         
-        return (Direction)result.get("Direction");
+        Direction bestDirection = (Direction)result.get("Direction");
+        Object[] lastSearch = LAST_SEARCH.get();
+        lastSearch[0] = theBoard;
+        lastSearch[1] = result.get("Score");
+        Profiling.endSearch(event, theBoard, depth, nodes[0]-startNodes, bestDirection);
+        return bestDirection;
+    }
+    
+    /**
+     * Scores every direction of the board with a search of the given depth.
+     * 
+     * @param theBoard
+     * @param depth depth of the search including the move itself, at least 1
+     * @param weights
+     * @return the scores indexed by Direction.ordinal(), Integer.MIN_VALUE for
+     * directions that do not change the board
+     * @throws CloneNotSupportedException 
+     */
+    public static int[] scoreMoves(Board theBoard, int depth, HeuristicWeights weights) throws CloneNotSupportedException {
+        int[] scores = new int[Direction.values().length];
+        long[] nodes = NODE_COUNT.get();
+        for(Direction direction : Direction.values()) {
+            Board newBoard = (Board) theBoard.clone();
+            int points=newBoard.move(direction);
+            if(points==0 && newBoard.isEqual(theBoard.getBoardArray(), newBoard.getBoardArray())) {
+                scores[direction.ordinal()] = Integer.MIN_VALUE;
+                continue;
+            }
+            Map<String, Object> result = alphabeta(newBoard, depth-1, Integer.MIN_VALUE, Integer.MAX_VALUE, Player.COMPUTER, weights, nodes);
+            scores[direction.ordinal()] = ((Number)result.get("Score")).intValue();
+        }
+        return scores;
     }
     
     /**
@@ -65,11 +178,34 @@ public class AIsolver {
      * @param alpha
      * @param beta
      * @param player
+     * @param weights
+     * @param nodes counter of the searched nodes
      * @return
      * @throws CloneNotSupportedException 
      */
-    private static Map<String, Object> alphabeta(Board theBoard, int depth, int alpha, int beta, Player player) throws CloneNotSupportedException {
+    private static Map<String, Object> alphabeta(Board theBoard, int depth, int alpha, int beta, Player player, HeuristicWeights weights, long[] nodes) throws CloneNotSupportedException {
+        if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("search interrupted"); //a cancelled background search stops at its next node
+        }
         Map<String, Object> result = new HashMap<>();
+        ++nodes[0];
+        
+        TranspositionTable table = transpositionTable;
+        long key = 0;
+        int alphaStart = alpha, betaStart = beta;
+        if(table!=null && (depth>1 || player==Player.COMPUTER)) { //a probe costs more than the 4 leaves of a user node of depth 1
+            key = positionKey(theBoard, player, weights);
+            long entry = table.probe(key);
+            if(entry!=0 && TranspositionTable.getDepth(entry)>=depth) {
+                int entryScore = TranspositionTable.getScore(entry);
+                int bound = TranspositionTable.getBound(entry);
+                if(bound==TranspositionTable.EXACT || (bound==TranspositionTable.LOWER && entryScore>=beta) || (bound==TranspositionTable.UPPER && entryScore<=alpha)) {
+                    result.put("Score", entryScore);
+                    result.put("Direction", TranspositionTable.getDirection(entry));
+                    return result;
+                }
+            }
+        }
         
         Direction bestDirection = null;
         int bestScore;
@@ -79,11 +215,11 @@ public class AIsolver {
                 bestScore=Integer.MAX_VALUE; //highest possible score
             }
             else {
-                bestScore=Math.min(theBoard.getScore(), 1); //lowest possible score
+                bestScore=LOSS_SCORE; //lowest possible score
             }
         }
         else if(depth==0) {
-            bestScore=heuristicScore(theBoard.getScore(),theBoard.getNumberOfEmptyCells(),calculateClusteringScore(theBoard.getBoardArray()));  //highest heuristic score when depth is 0
+            bestScore=heuristicScore(theBoard.getScore(),theBoard.getNumberOfEmptyCells(),calculateClusteringScore(theBoard.getBoardArray()),weights);  //highest heuristic score when depth is 0
         }
         else {
             if(player == Player.USER) {
@@ -96,7 +232,7 @@ public class AIsolver {
                     	continue;        
                     }
                     
-                    Map<String, Object> currentResult = alphabeta(newBoard, depth-1, alpha, beta, Player.COMPUTER);   //uses alpha beta pruning to get best score
+                    Map<String, Object> currentResult = alphabeta(newBoard, depth-1, alpha, beta, Player.COMPUTER, weights, nodes);   //uses alpha beta pruning to get best score
                     int currentScore=((Number)currentResult.get("Score")).intValue();
                                         
                     if(currentScore>alpha) { //maximize score
@@ -124,7 +260,7 @@ public class AIsolver {
                         Board newBoard = (Board) theBoard.clone();
                         newBoard.setEmptyCell(i, j, value);
 
-                        Map<String, Object> currentResult = alphabeta(newBoard, depth-1, alpha, beta, Player.USER);
+                        Map<String, Object> currentResult = alphabeta(newBoard, depth-1, alpha, beta, Player.USER, weights, nodes);
                         int currentScore=((Number)currentResult.get("Score")).intValue();
                         if(currentScore<beta) { //minimize best score
                             beta=currentScore;
@@ -144,12 +280,58 @@ public class AIsolver {
             }
         }
         
+        if(table!=null && (depth>1 || player==Player.COMPUTER)) {
+            int bound = (bestScore<=alphaStart)?TranspositionTable.UPPER:(bestScore>=betaStart)?TranspositionTable.LOWER:TranspositionTable.EXACT;
+            table.store(key, bestScore, depth, bound, bestDirection);
+        }
+        
         result.put("Score", bestScore);                  //final score
         result.put("Direction", bestDirection);          //final move      
         
         return result;
     }
     
+    /**
+     * Hashes what the results stored in a transposition table file depend on
+     * besides the positions: the heuristic weights, the target and the score
+     * rules (the win score and LOSS_SCORE).
+     * 
+     * @param weights
+     * @param targetPoints
+     * @return 
+     */
+    static long tableIdentity(HeuristicWeights weights, int targetPoints) {
+        long rules = mix(mix(Integer.MAX_VALUE) ^ LOSS_SCORE);
+        return mix(rules ^ mix(weights.getKey() ^ targetPoints));
+    }
+    
+    /**
+     * Hashes a position for the transposition table. The key covers everything
+     * the search result depends on: the cells, the score, the player to move,
+     * the target and the heuristic weights.
+     * 
+     * @param theBoard
+     * @param player
+     * @param weights
+     * @return 
+     */
+    private static long positionKey(Board theBoard, Player player, HeuristicWeights weights) {
+        long key = mix(theBoard.getPackedBoard() ^ weights.getKey() ^ Board.targetPoints);
+        return mix(key ^ ((long) theBoard.getScore() << 1 | player.ordinal()));
+    }
+    
+    /**
+     * Finalizer of SplitMix64, spreads the bits of a value over the whole long.
+     * 
+     * @param value
+     * @return 
+     */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+    
     /**
      * Estimates a heuristic score by taking into account the real score, the
      * number of empty cells and the clustering score of the board.
@@ -157,10 +339,11 @@ public class AIsolver {
      * @param actualScore
      * @param numberOfEmptyCells
      * @param clusteringScore
+     * @param weights
      * @return 
      */
-    private static int heuristicScore(int actualScore, int numberOfEmptyCells, int clusteringScore) {
-        int score = (int) (actualScore+Math.log(actualScore)*numberOfEmptyCells -clusteringScore);
+    private static int heuristicScore(int actualScore, int numberOfEmptyCells, int clusteringScore, HeuristicWeights weights) {
+        int score = (int) (weights.getScore()*actualScore+weights.getEmptyCells()*Math.log(actualScore)*numberOfEmptyCells -weights.getClustering()*clusteringScore);
         return Math.max(score, Math.min(actualScore, 1));
     }
     
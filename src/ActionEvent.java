@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one Board.action() move.
+ */
+@Name("game2048.Action")
+@Label("Action")
+@Category("2048")
+@Description("A move applied to the board")
+@StackTrace(false)
+public class ActionEvent extends jdk.jfr.Event {
+
+    @Label("Status")
+    String status;
+
+    @Label("Points")
+    int points;
+}
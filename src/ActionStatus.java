@@ -40,7 +40,12 @@ public enum ActionStatus {
     /**
      * Invalid move, move can't be performed.
      */
-    INVALID_MOVE(3,"Invalid move!");
+    INVALID_MOVE(3,"Invalid move!"),
+    
+    /**
+     * The game was resigned because it was very unlikely to be won.
+     */
+    RESIGNED(4,"Resigned, the game ended!");
     
     /**
      * The numeric code of the status
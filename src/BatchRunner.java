@@ -0,0 +1,220 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Plays a batch of seeded games with one solver, streams every result to the
+ * results file, publishes live Metrics and checkpoints the progress
+ * periodically. A run that is killed resumes from its last checkpoint: the
+ * games completed by then are not replayed, and results written after the
+ * checkpoint are dropped and played again.
+ */
+public class BatchRunner {
+
+    /**
+     * Default checkpoint file
+     */
+    public static final String DEFAULT_CHECKPOINT = "checkpoint";
+
+    /**
+     * Minimum time between two checkpoints in milliseconds
+     */
+    public static final long CHECKPOINT_INTERVAL = 10000;
+
+    /**
+     * Identifies checkpoint files
+     */
+    private static final int MAGIC = 0x32303443;
+
+    private final String config;
+    private final Solver solver;
+    private final int numOfGames;
+    private final int targetPoints;
+    private final File checkpointFile;
+    private final File resultsFile;
+
+    /**
+     * Resign policy, or null to play every game to the end
+     */
+    private ResignPolicy resignPolicy=null;
+
+    /**
+     * Constructor
+     *
+     * @param config description of the solver, a checkpoint is only resumed by
+     * a run with the same description
+     * @param solver
+     * @param numOfGames
+     * @param targetPoints
+     * @param checkpointFile
+     * @param resultsFile
+     */
+    public BatchRunner(String config, Solver solver, int numOfGames, int targetPoints, File checkpointFile, File resultsFile) {
+        this.config = config;
+        this.solver = solver;
+        this.numOfGames = numOfGames;
+        this.targetPoints = targetPoints;
+        this.checkpointFile = checkpointFile;
+        this.resultsFile = resultsFile;
+    }
+
+    /**
+     * Setter for the resign policy. The threshold of the policy should be part of
+     * the configuration, so a checkpoint is not resumed with another threshold.
+     *
+     * @param resignPolicy
+     */
+    public void setResignPolicy(ResignPolicy resignPolicy) {
+        this.resignPolicy = resignPolicy;
+    }
+
+    /**
+     * Plays the remaining games of the batch and prints every game. The
+     * checkpoint is deleted once the batch is complete.
+     *
+     * @return the statistics of the whole batch
+     * @throws CloneNotSupportedException
+     * @throws IOException
+     */
+    public BatchStats run() throws CloneNotSupportedException, IOException {
+        long firstSeed = System.nanoTime();
+        BatchStats stats = new BatchStats();
+        boolean resume = checkpointFile.exists() && resultsFile.exists();
+        if(resume) {
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+                if(in.readInt()!=MAGIC || !in.readUTF().equals(config) || in.readInt()!=numOfGames || in.readInt()!=targetPoints) {
+                    resume = false; //checkpoint of another batch
+                }
+                else {
+                    firstSeed = in.readLong();
+                    stats = BatchStats.read(in);
+                    if(!resultsMatch(firstSeed, stats.getGames())) {
+                        System.out.println("Not resuming: '" + resultsFile + "' does not hold the " + stats.getGames() + " games of the checkpoint");
+                        resume = false;
+                    }
+                    else {
+                        if(resignPolicy!=null) {
+                            resignPolicy.read(in);
+                        }
+                        if(solver instanceof DepthScheduler) {
+                            ((DepthScheduler) solver).read(in); //the CPU budget already spent
+                        }
+                    }
+                }
+            }
+            catch(EOFException e) {
+                System.out.println("Not resuming: '" + checkpointFile + "' is truncated or of an older version");
+                resume = false;
+            }
+        }
+        if(resume) {
+            System.out.println("Resuming from the checkpoint after " + stats.getGames() + " games");
+        }
+        else {
+            stats = new BatchStats();
+        }
+
+        Metrics.INSTANCE.publish();
+        try(ResultsWriter results = new ResultsWriter(resultsFile, resume)) {
+            results.truncate(stats.getGames()); //drop the games played after the checkpoint
+            long lastCheckpoint = System.currentTimeMillis();
+            for(int i=stats.getGames();i<numOfGames;++i) {
+                boolean audit = resignPolicy!=null && resignPolicy.isAudit(i);
+                GameResult result = GameResult.play(solver, targetPoints, firstSeed+i, resignPolicy, audit);
+                if(resignPolicy!=null) {
+                    resignPolicy.record(result, audit);
+                }
+                results.write(result);
+                stats.add(result.hasWon(), result.getScore(), result.getSeconds());
+                Metrics.INSTANCE.recordGame(result.hasWon());
+                ConsoleGame.printGame(i, result);
+
+                if(System.currentTimeMillis()-lastCheckpoint>=CHECKPOINT_INTERVAL) {
+                    results.sync(); //results must reach the disk before the checkpoint refers to them
+                    writeCheckpoint(firstSeed, stats);
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+            }
+        }
+        Files.deleteIfExists(checkpointFile.toPath());
+        return stats;
+    }
+
+    /**
+     * Checks that the results file holds the games of a checkpoint: at least as
+     * many records, the last of them played from the expected seed. A results
+     * file that was replaced, truncated or written by another batch fails.
+     *
+     * @param firstSeed
+     * @param games games of the checkpoint
+     * @return
+     * @throws IOException
+     */
+    private boolean resultsMatch(long firstSeed, int games) throws IOException {
+        try(FileChannel channel = FileChannel.open(resultsFile.toPath(), StandardOpenOption.READ)) {
+            if(channel.size()<ResultsWriter.HEADER_SIZE || (channel.size()-ResultsWriter.HEADER_SIZE)/GameResult.RECORD_SIZE<games) {
+                return false;
+            }
+            ByteBuffer header = read(channel, 0, ResultsWriter.HEADER_SIZE);
+            if(header.getInt()!=ResultsWriter.MAGIC || header.getInt()!=ResultsWriter.VERSION || header.getInt()!=GameResult.RECORD_SIZE) {
+                return false;
+            }
+            return games==0 || read(channel, ResultsWriter.HEADER_SIZE+(games-1L)*GameResult.RECORD_SIZE, Long.BYTES).getLong()==firstSeed+games-1;
+        }
+    }
+
+    /**
+     * Reads bytes of a file at a position.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position+buffer.position())<0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Replaces the checkpoint atomically, so a crash while writing leaves the
+     * previous one intact.
+     *
+     * @param firstSeed
+     * @param stats
+     * @throws IOException
+     */
+    private void writeCheckpoint(long firstSeed, BatchStats stats) throws IOException {
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try(FileOutputStream file = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(config);
+            out.writeInt(numOfGames);
+            out.writeInt(targetPoints);
+            out.writeLong(firstSeed);
+            stats.write(out);
+            if(resignPolicy!=null) {
+                resignPolicy.write(out);
+            }
+            if(solver instanceof DepthScheduler) {
+                ((DepthScheduler) solver).write(out);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.FileNotFoundException;
+
+/**
+ * Simulates many games in lockstep for bulk runs with shallow policies. The
+ * games are kept as a structure of primitive arrays (packed board, score, number
+ * of moves and random state per game). Every step applies the chosen move to all
+ * live games and spawns their new tiles, and finished games are compacted out by
+ * swapping them with the last live game, so the hot loop only touches dense
+ * arrays and never allocates.
+ */
+public class BatchSimulator {
+
+    /**
+     * Weight of an empty cell in the policy evaluation
+     */
+    private static final int EMPTY_CELL_WEIGHT = 16;
+
+    private final int depth;
+    private final int targetExponent;
+
+    private final long[] boards;
+    private final int[] scores;
+    private final int[] moves;
+    private final long[] randomStates;
+    private int live;
+
+    private int wins;
+    private long totalScore;
+    private long totalMoves;
+    private int finished;
+
+    /**
+     * Constructor.
+     *
+     * @param numOfGames number of games simulated together
+     * @param depth policy depth, 1 (greedy) or 2 (one spawn lookahead)
+     * @param targetPoints
+     * @param seed
+     */
+    public BatchSimulator(int numOfGames, int depth, int targetPoints, long seed) {
+        this.depth = Math.max(1, Math.min(depth, 2));
+        this.targetExponent = PackedBoard.toExponent(targetPoints);
+        boards = new long[numOfGames];
+        scores = new int[numOfGames];
+        moves = new int[numOfGames];
+        randomStates = new long[numOfGames];
+        for(int g=0;g<numOfGames;++g) {
+            randomStates[g] = mix(seed+g) | 1; //xorshift state must not be 0
+            boards[g] = spawn(spawn(0L, g), g); //2 cells in the initial board
+        }
+        live = numOfGames;
+    }
+
+    /**
+     * Runs all games to the end.
+     */
+    public void run() {
+        while(live>0) {
+            step();
+        }
+    }
+
+    /**
+     * Plays one move in every live game and removes the finished ones.
+     */
+    public void step() {
+        for(int g=0;g<live;++g) {
+            long board = boards[g];
+            int bestDirection = chooseMove(board, depth);
+            if(bestDirection<0) {
+                continue; //no more moves, removed below
+            }
+            Direction direction = Direction.values()[bestDirection];
+            scores[g] += PackedBoard.movePoints(board, direction);
+            boards[g] = spawn(PackedBoard.move(board, direction), g);
+            ++moves[g];
+        }
+
+        for(int g=0;g<live;) {
+            long board = boards[g];
+            boolean won = PackedBoard.maxExponent(board)>=targetExponent;
+            if(won || PackedBoard.isTerminated(board)) {
+                if(won) {
+                    ++wins;
+                }
+                totalScore += scores[g];
+                totalMoves += moves[g];
+                ++finished;
+                swap(g, --live); //compact the finished game out
+            }
+            else {
+                ++g;
+            }
+        }
+    }
+
+    /**
+     * Picks the direction with the best evaluation.
+     *
+     * @param board
+     * @param depth policy depth, 1 (greedy) or 2 (one spawn lookahead)
+     * @return the code of the direction or -1 if no move is possible
+     */
+    public static int chooseMove(long board, int depth) {
+        int bestDirection=-1;
+        double bestValue=Double.NEGATIVE_INFINITY;
+        for(Direction direction : Direction.values()) {
+            long newBoard = PackedBoard.move(board, direction);
+            if(newBoard==board) {
+                continue;
+            }
+            double value = PackedBoard.movePoints(board, direction);
+            value += (depth==1)?EMPTY_CELL_WEIGHT*PackedBoard.countEmpty(newBoard):expectedValue(newBoard);
+            if(value>bestValue) {
+                bestValue=value;
+                bestDirection=direction.getCode();
+            }
+        }
+        return bestDirection;
+    }
+
+    /**
+     * Expected value of the best greedy reply over all the possible spawns.
+     *
+     * @param board
+     * @return
+     */
+    private static double expectedValue(long board) {
+        int empty = PackedBoard.countEmpty(board);
+        if(empty==0) {
+            return 0;
+        }
+        double sum=0;
+        for(int cellId=0;cellId<Board.BOARD_SIZE*Board.BOARD_SIZE;++cellId) {
+            if(PackedBoard.getCell(board, cellId)!=0) {
+                continue;
+            }
+            sum += 0.9*greedyValue(PackedBoard.setCell(board, cellId, 1));
+            sum += 0.1*greedyValue(PackedBoard.setCell(board, cellId, 2));
+        }
+        return sum/empty;
+    }
+
+    private static int greedyValue(long board) {
+        int best=0;
+        for(Direction direction : Direction.values()) {
+            long newBoard = PackedBoard.move(board, direction);
+            if(newBoard!=board) {
+                best = Math.max(best, PackedBoard.movePoints(board, direction)+EMPTY_CELL_WEIGHT*PackedBoard.countEmpty(newBoard));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Places a 2 (90%) or a 4 (10%) on a random empty cell using the random state
+     * of a game.
+     *
+     * @param board
+     * @param game
+     * @return
+     */
+    private long spawn(long board, int game) {
+        int empty = PackedBoard.countEmpty(board);
+        if(empty==0) {
+            return board;
+        }
+        long random = nextRandom(game);
+        int pick = (int) (((random>>>32)*empty)>>>32);
+        int exponent = ((random & 0xFFFFFFL)<0.9*0x1000000L)?1:2;
+        return PackedBoard.setNthEmptyCell(board, pick, exponent);
+    }
+
+    /**
+     * Advances the xorshift64* generator of a game.
+     *
+     * @param game
+     * @return
+     */
+    private long nextRandom(int game) {
+        long x = randomStates[game];
+        x ^= x>>>12;
+        x ^= x<<25;
+        x ^= x>>>27;
+        randomStates[game] = x;
+        return x*0x2545F4914F6CDD1DL;
+    }
+
+    private static long mix(long z) {
+        z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+        z = (z^(z>>>27))*0x94D049BB133111EBL;
+        return z^(z>>>31);
+    }
+
+    private void swap(int a, int b) {
+        long board=boards[a]; boards[a]=boards[b]; boards[b]=board;
+        int score=scores[a]; scores[a]=scores[b]; scores[b]=score;
+        int move=moves[a]; moves[a]=moves[b]; moves[b]=move;
+        long state=randomStates[a]; randomStates[a]=randomStates[b]; randomStates[b]=state;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getFinished() {
+        return finished;
+    }
+
+    public long getTotalScore() {
+        return totalScore;
+    }
+
+    public long getTotalMoves() {
+        return totalMoves;
+    }
+
+    /**
+     * Compares the games/sec of the batch simulator against the object-per-game
+     * loop of ConsoleGame, both playing the policy of chooseMove() at the same
+     * depth, and prints the results. The games are not the same, since the two
+     * spawn tiles with different random generators, so the average number of moves
+     * is printed to check that the workloads are comparable.
+     *
+     * @throws CloneNotSupportedException
+     * @throws FileNotFoundException
+     */
+    public static void benchmark() throws CloneNotSupportedException, FileNotFoundException {
+        int total = DataModel.getNumOfGames();
+        int depth = Math.max(1, Math.min(DataModel.getDepth(), 2));
+        int targetPoints = DataModel.getMaxCell();
+        System.out.println("Running "+total+" games at depth "+depth+" with each simulator:");
+
+        Stopwatch timer = new Stopwatch();
+        BatchSimulator simulator = new BatchSimulator(total, depth, targetPoints, System.nanoTime());
+        simulator.run();
+        double batchTime = timer.elapsedTime();
+
+        Solver policy = theBoard -> {
+            int code = chooseMove(PackedBoard.pack(theBoard.getBoardArray()), depth);
+            return (code<0)?null:Direction.values()[code];
+        };
+        timer = new Stopwatch();
+        int objectWins=0;
+        long objectMoves=0;
+        for(int i=0;i<total;++i) {
+            Board theGame = new Board(targetPoints);
+            if(ConsoleGame.playGame(theGame, policy)==ActionStatus.WIN) {
+                ++objectWins;
+            }
+            objectMoves += theGame.getMoves();
+        }
+        double objectTime = timer.elapsedTime();
+
+        System.out.println();
+        System.out.println("batch simulator:  " + simulator.getWins() + " wins, avg score " + Math.round(simulator.getTotalScore()/(double) total*100.0)/100.0
+                + ", avg moves " + Math.round(simulator.getTotalMoves()/(double) total*100.0)/100.0 + ", " + gamesPerSecond(total, batchTime) + " games/sec");
+        System.out.println("object per game:  " + objectWins + " wins, avg moves " + Math.round(objectMoves/(double) total*100.0)/100.0
+                + ", " + gamesPerSecond(total, objectTime) + " games/sec");
+        System.out.println();
+    }
+
+    private static double gamesPerSecond(int games, double seconds) {
+        return Math.round(games/Math.max(seconds, 0.001)*100.0)/100.0;
+    }
+}
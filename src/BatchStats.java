@@ -0,0 +1,101 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Running wins/score/time statistics of a batch of games. Partial statistics
+ * from several runners can be merged into one report.
+ */
+public class BatchStats {
+
+    private int games=0;
+    private int wins=0;
+    private long totalScore=0;
+    private double totalTime=0;
+
+    /**
+     * Adds the result of one game.
+     *
+     * @param won
+     * @param score
+     * @param seconds
+     */
+    public void add(boolean won, int score, double seconds) {
+        ++games;
+        wins += won?1:0;
+        totalScore += score;
+        totalTime += seconds;
+    }
+
+    /**
+     * Adds the statistics of another batch.
+     *
+     * @param other
+     */
+    public void merge(BatchStats other) {
+        games += other.games;
+        wins += other.wins;
+        totalScore += other.totalScore;
+        totalTime += other.totalTime;
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public long getTotalScore() {
+        return totalScore;
+    }
+
+    public double getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Writes the statistics.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(games);
+        out.writeInt(wins);
+        out.writeLong(totalScore);
+        out.writeDouble(totalTime);
+    }
+
+    /**
+     * Reads statistics written by write().
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static BatchStats read(DataInput in) throws IOException {
+        BatchStats stats = new BatchStats();
+        stats.games = in.readInt();
+        stats.wins = in.readInt();
+        stats.totalScore = in.readLong();
+        stats.totalTime = in.readDouble();
+        return stats;
+    }
+
+    /**
+     * Prints the summary in the format of ConsoleGame.calculateAccuracy().
+     */
+    public void print() {
+        int total = Math.max(games, 1);
+        System.out.println(wins+" wins out of "+games+" games.");
+        System.out.println();
+        System.out.println("completed " + games + " games in an avg time of:" + " " + Math.round(totalTime/total *100.0)/100.0 + " Seconds");
+        System.out.println();
+        System.out.println("completed " + games + " games with an avg score of:" + " " + Math.round(totalScore/(double) total *100.0)/100.0);
+        System.out.println();
+        System.out.println("completed " + games + " games with a success rate of: " + Math.round((((double)wins/total)*100.0) * 100.0)/100.0 + "%");
+        System.out.println();
+    }
+}
@@ -48,6 +48,11 @@ public class Board implements Cloneable {
      */
     private int score=0;
     
+    /**
+     * The number of moves that changed the board so far
+     */
+    private int moves=0;
+    
     /**
      * The board values
      */
@@ -67,11 +72,22 @@ public class Board implements Cloneable {
      * Constructor without arguments. It initializes randomly the Board
      */
     public Board(int tp) {
+        this(tp, System.currentTimeMillis());
+    }
+    
+    /**
+     * Constructor with a seed. Boards with the same seed get the same random
+     * cells as long as the same moves are played.
+     * 
+     * @param tp
+     * @param seed 
+     */
+    public Board(int tp, long seed) {
     	targetPoints = tp;
     	n = (int) (Math.log(targetPoints)/Math.log(2));
     	minimumWinScore = (targetPoints * (n-1)) - targetPoints;
         boardArray = new int[BOARD_SIZE][BOARD_SIZE]; // Initialize square board
-        randomGenerator = new Random(System.currentTimeMillis()); // Initialize Random generator
+        randomGenerator = new Random(seed); // Initialize Random generator
 
         // Create 2 cells in the board
         addRandomCell();
@@ -105,6 +121,39 @@ public class Board implements Cloneable {
         return score;
     }
     
+    /**
+     * Getter for moves attribute
+     * 
+     * @return 
+     */
+    public int getMoves() {
+        return moves;
+    }
+    
+    /**
+     * Returns the value of the largest cell.
+     * 
+     * @return 
+     */
+    public int getMaxCell() {
+        int maxCell=0;
+        for(int i=0;i<BOARD_SIZE;++i) {
+            for(int j=0;j<BOARD_SIZE;++j) {
+                maxCell=Math.max(maxCell, boardArray[i][j]);
+            }
+        }
+        return maxCell;
+    }
+    
+    /**
+     * Packs the board without copying it, see PackedBoard.
+     * 
+     * @return 
+     */
+    public long getPackedBoard() {
+        return PackedBoard.pack(boardArray);
+    }
+    
     /**
      * Getter for BoardArray
      * @return 
@@ -286,6 +335,7 @@ public class Board implements Cloneable {
      * @throws java.lang.CloneNotSupportedException 
      */
     public ActionStatus action(Direction direction) throws CloneNotSupportedException {
+        Object event = Profiling.beginAction();
         ActionStatus result = ActionStatus.CONTINUE;
         
         int[][] currBoardArray = getBoardArray(); // board before move
@@ -296,6 +346,7 @@ public class Board implements Cloneable {
         boolean newCellAdded = false;
         
         if(!isEqual(currBoardArray, newBoardArray)) { // if board is changed, then a cell has been added
+            ++moves;
             newCellAdded = addRandomCell();
         }
         
@@ -318,6 +369,7 @@ public class Board implements Cloneable {
             }
         }
         
+        Profiling.endAction(event, result, newPoints);
         return result;
     }
     
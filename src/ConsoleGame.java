@@ -1,6 +1,7 @@
 
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Scanner;
 
 /**
@@ -37,10 +38,24 @@ public class ConsoleGame {
                     		 break;
                     case 3: System.out.println("Bye");
                     		return;	//exit
+                    case 4:  calculateMonteCarloAccuracy(in);
+                             break;
+                    case 5:  BatchSimulator.benchmark();
+                             break;
+                    case 6:  buildOpeningBook(in);
+                             break;
+                    case 7:  runTournament(in);
+                             break;
+                    case 8:  runDistributed(in);
+                             break;
+                    case 9:  calculateResignAccuracy(in);
+                             break;
+                    case 10: calculateBudgetAccuracy(in);
+                             break;
                     default: throw new Exception();
                 }
             }
-            //if user enters a number that is not 1-3
+            //if user enters a number that is not 1-10
             catch(Exception e) {
                 System.out.println(e);
             }
@@ -57,8 +72,15 @@ public class ConsoleGame {
         System.out.println("1. Estimate the Accuracy of AI Solver");
         System.out.println("2. Change numbers");
         System.out.println("3. Quit");
+        System.out.println("4. Estimate the Accuracy of Monte Carlo Solver");
+        System.out.println("5. Benchmark the Batch Simulator");
+        System.out.println("6. Build the Opening Book");
+        System.out.println("7. Run a Tournament between two Solvers");
+        System.out.println("8. Run the Games on several Worker Processes");
+        System.out.println("9. Estimate the Accuracy of AI Solver with Early Resignation");
+        System.out.println("10. Estimate the Accuracy of AI Solver with a CPU Budget");
         System.out.println();
-        System.out.println("Enter numbers 1-3:");
+        System.out.println("Enter numbers 1-10:");
     }
     
     public static void changeVar(Scanner in) throws FileNotFoundException{
@@ -73,63 +95,256 @@ public class ConsoleGame {
     }
     
     /**
-     * Estimates the accuracy of the AI solver by running multiple games.
+     * Runs the current batch on the number of worker processes entered by the
+     * user.
      * 
+     * @param in
+     * @throws IOException 
+     * @throws InterruptedException 
+     */
+    public static void runDistributed(Scanner in) throws IOException, InterruptedException {
+    	System.out.print("\n\n Enter number of worker processes: ");
+    	DistributedRunner.runDefault(in.nextInt());
+    }
+    
+    /**
+     * Runs a tournament between the two solver configurations entered by the
+     * user, with at most the current number of games as pairs.
+     * 
+     * @param in
      * @throws CloneNotSupportedException 
      * @throws FileNotFoundException 
      */
-    public static void calculateAccuracy() throws CloneNotSupportedException, FileNotFoundException {
-        int wins=0;
-        int total = DataModel.getNumOfGames();
-        double sum=0;
-        double temp=0;
-        double score=0;
-        System.out.println("Running "+total+" games to estimate the accuracy:");
-        Stopwatch timer;	
-        ArrayList<Double> Numbers = new ArrayList<Double>();
-    
-        for(int i=0;i<total;++i) {
-        	timer = new Stopwatch(); //initializes the stopwatch
-            int hintDepth = DataModel.getDepth(); //declare the depth which the minimax algorithm will use
-            Board theGame = new Board(DataModel.getMaxCell());	//initializes a new board object
-            Direction hint = AIsolver.findBestMove(theGame, hintDepth);	//uses the class Direction to decide which is the best move
-            ActionStatus result=ActionStatus.CONTINUE;	//checks with enum if it can continue 
-            while(result==ActionStatus.CONTINUE || result==ActionStatus.INVALID_MOVE) {	//if it can continue or it is currently in the state of invalid move
-                result=theGame.action(hint);	
-               
-                if(result==ActionStatus.CONTINUE || result==ActionStatus.INVALID_MOVE ) {
-                    hint = AIsolver.findBestMove(theGame, hintDepth);	//finds the best move if any of the above conditions are met
-                }
-            }
-            Numbers.add(timer.elapsedTime());	//appends the elapsed time to the array list
-            if(result == ActionStatus.WIN) {	//if won
-                ++wins;	//increase win counter
-                System.out.println();	//print empty line
-                System.out.println("Game "+(i+1)+" - won" + " in " + timer.elapsedTime() + " Seconds" +  " Score = " + theGame.getScore());	//prints result
-                System.out.println("Over the min score by: "+ (theGame.getScore() - theGame.getMinimumScore()));
+    public static void runTournament(Scanner in) throws CloneNotSupportedException, FileNotFoundException {
+    	System.out.print("\n\n Enter solver A (ab:depth[:weights] or mc:playouts[:milliseconds]): ");
+    	String configA = in.next();
+    	
+    	System.out.print("\n Enter solver B (ab:depth[:weights] or mc:playouts[:milliseconds]): ");
+    	String configB = in.next();
+    	
+    	Tournament.run(configA, configB, DataModel.getNumOfGames(), DataModel.getMaxCell(), System.currentTimeMillis());
+    }
+    
+    /**
+     * Builds the opening book with the number of games and opening moves entered
+     * by the user.
+     * 
+     * @param in
+     * @throws CloneNotSupportedException 
+     * @throws IOException 
+     */
+    public static void buildOpeningBook(Scanner in) throws CloneNotSupportedException, IOException {
+    	System.out.print("\n\n Enter number of games: ");
+    	int games = in.nextInt();
+    	
+    	System.out.print("\n Enter number of opening moves per game: ");
+    	int openingMoves = in.nextInt();
+    	
+    	OpeningBook.buildDefault(games, openingMoves);
+    }
+    
+    /**
+     * Estimates the accuracy of the Monte Carlo solver with the playout budget
+     * entered by the user.
+     * 
+     * @param in
+     * @throws CloneNotSupportedException 
+     * @throws IOException 
+     */
+    public static void calculateMonteCarloAccuracy(Scanner in) throws CloneNotSupportedException, IOException {
+    	System.out.print("\n\n Enter playouts per move (0 for no limit): ");
+    	int playouts = in.nextInt();
+    	
+    	System.out.print("\n Enter time limit per move in milliseconds (0 for no limit): ");
+    	long timeLimit = in.nextLong();
+    	
+    	calculateAccuracy("mc:" + playouts + ":" + timeLimit, new MonteCarloSolver(playouts, timeLimit));
+    }
+    
+    /**
+     * Estimates the accuracy of the AI solver by running multiple games. The
+     * opening book is consulted first when one has been built.
+     * 
+     * @throws CloneNotSupportedException 
+     * @throws IOException 
+     */
+    public static void calculateAccuracy() throws CloneNotSupportedException, IOException {
+        int hintDepth = DataModel.getDepth(); //declare the depth which the minimax algorithm will use
+        String config = "ab:" + hintDepth;
+        HeuristicWeights weights = HeuristicWeights.loadDefault();
+        if(!weights.equals(HeuristicWeights.DEFAULT)) {
+            System.out.println("Using the tuned heuristic weights " + weights);
+            config += ":" + weights;
+        }
+        Solver solver = theBoard -> AIsolver.findBestMove(theBoard, hintDepth, weights);
+        
+        OpeningBook book = OpeningBook.loadDefault(hintDepth, DataModel.getMaxCell(), weights);
+        if(book!=null) {
+            System.out.println("Using the opening book with " + book.size() + " positions");
+            config += "+" + book.getIdentity();
+            solver = book.solver(solver, OpeningBook.DEFAULT_CONFIDENCE);
+        }
+        calculateAccuracy(config, solver);
+    }
+    
+    /**
+     * Estimates the accuracy of the AI solver with early resignation below the
+     * win probability entered by the user, with the coefficients fitted by
+     * ResignPolicy. One game in 10 is audited.
+     * 
+     * @param in
+     * @throws CloneNotSupportedException 
+     * @throws IOException 
+     */
+    public static void calculateResignAccuracy(Scanner in) throws CloneNotSupportedException, IOException {
+    	System.out.print("\n\n Enter resign win probability (0 for the default of " + ResignPolicy.DEFAULT_THRESHOLD + "): ");
+    	double threshold = in.nextDouble();
+    	if(threshold<=0) {
+    		threshold = ResignPolicy.DEFAULT_THRESHOLD;
+    	}
+    	
+        int hintDepth = DataModel.getDepth();
+        String config = "ab:" + hintDepth;
+        HeuristicWeights weights = HeuristicWeights.loadDefault();
+        if(!weights.equals(HeuristicWeights.DEFAULT)) {
+            config += ":" + weights;
+        }
+        ResignPolicy policy = ResignPolicy.loadDefault(threshold, 10);
+        calculateAccuracy(config + "+resign:" + policy, theBoard -> AIsolver.findBestMove(theBoard, hintDepth, weights), policy);
+    }
+    
+    /**
+     * Estimates the accuracy of the AI solver when the depth of every move is
+     * scheduled within the CPU budget and the depth range entered by the user.
+     * 
+     * @param in
+     * @throws CloneNotSupportedException 
+     * @throws IOException 
+     */
+    public static void calculateBudgetAccuracy(Scanner in) throws CloneNotSupportedException, IOException {
+    	System.out.print("\n\n Enter CPU budget for all games in seconds: ");
+    	double budget = in.nextDouble();
+    	
+    	System.out.print("\n Enter min depth: ");
+    	int minDepth = in.nextInt();
+    	
+    	System.out.print("\n Enter max depth: ");
+    	int maxDepth = in.nextInt();
+    	
+        DepthScheduler scheduler = new DepthScheduler(minDepth, maxDepth, budget, DataModel.getNumOfGames(), HeuristicWeights.loadDefault());
+        calculateAccuracy("budget:" + minDepth + "-" + maxDepth + ":" + budget, scheduler);
+        scheduler.print();
+    }
+    
+    /**
+     * Plays a game to the end with the moves of a solver.
+     * 
+     * @param theGame
+     * @param solver
+     * @return the final status, WIN or NO_MORE_MOVES
+     * @throws CloneNotSupportedException 
+     */
+    public static ActionStatus playGame(Board theGame, Solver solver) throws CloneNotSupportedException {
+        return playGame(theGame, solver, null, false);
+    }
+    
+    /**
+     * Plays a game to the end with the moves of a solver, resigning it when the
+     * resign policy gives up on it.
+     * 
+     * @param theGame
+     * @param solver
+     * @param policy resign policy or null
+     * @param audit only note where the policy would resign and play on
+     * @return the final status, WIN, NO_MORE_MOVES or RESIGNED
+     * @throws CloneNotSupportedException 
+     */
+    public static ActionStatus playGame(Board theGame, Solver solver, ResignPolicy policy, boolean audit) throws CloneNotSupportedException {
+        if(policy!=null) {
+            policy.reset();
+        }
+        Direction hint = solver.findBestMove(theGame);	//uses the class Direction to decide which is the best move
+        ActionStatus result=ActionStatus.CONTINUE;	//checks with enum if it can continue 
+        while(result==ActionStatus.CONTINUE || result==ActionStatus.INVALID_MOVE) {	//if it can continue or it is currently in the state of invalid move
+            result=theGame.action(hint);	
+            if(result!=ActionStatus.INVALID_MOVE) {
+                Metrics.INSTANCE.recordMove();
             }
-            else { //if lost
-            	System.out.println();	//print empty line
-                System.out.println("Game "+(i+1)+" - lost" + " in " + timer.elapsedTime() + " Seconds" +   " Score = " + theGame.getScore());	//prints result
-                System.out.println("Under the min score by: "+ (theGame.getMinimumScore() - theGame.getScore()));
+           
+            if(result==ActionStatus.CONTINUE || result==ActionStatus.INVALID_MOVE ) {
+                hint = solver.findBestMove(theGame);	//finds the best move if any of the above conditions are met
+                
+                if(policy!=null && policy.update(theGame, AIsolver.getLastScore(theGame)) && !audit && policy.isEnabled()) {
+                    return ActionStatus.RESIGNED;
+                }
             }
-            score+= theGame.getScore(); 
         }
+        return result;
+    }
+    
+    /**
+     * Estimates the accuracy of a solver by running multiple games. The result
+     * of every game is streamed to the results file as it finishes, and an
+     * interrupted run of the same solver resumes from its last checkpoint.
+     * 
+     * @param config description of the solver
+     * @param solver
+     * @throws CloneNotSupportedException 
+     * @throws IOException 
+     */
+    public static void calculateAccuracy(String config, Solver solver) throws CloneNotSupportedException, IOException {
+        calculateAccuracy(config, solver, null);
+    }
+    
+    /**
+     * Estimates the accuracy of a solver by running multiple games, resigning
+     * the games the resign policy gives up on.
+     * 
+     * @param config description of the solver
+     * @param solver
+     * @param policy resign policy or null
+     * @throws CloneNotSupportedException 
+     * @throws IOException 
+     */
+    public static void calculateAccuracy(String config, Solver solver, ResignPolicy policy) throws CloneNotSupportedException, IOException {
+        int total = DataModel.getNumOfGames();
+        System.out.println("Running "+total+" games to estimate the accuracy:");
+    
+        BatchRunner runner = new BatchRunner(config, solver, total, DataModel.getMaxCell(),
+                new File(BatchRunner.DEFAULT_CHECKPOINT), new File(ResultsWriter.DEFAULT_FILE));
+        runner.setResignPolicy(policy);
+        BatchStats stats = runner.run();
         
-        for(int i =0; i< Numbers.size(); i++){	//interate through the arraylist
-        	sum += Numbers.get(i);	//sum of all entries in the arraylist
-        	}
-        temp = temp + Math.round((((double)wins/total)*100.0) * 100.0)/100.0;
-        System.out.println();	//print empty line
-        System.out.println(wins+" wins out of "+total+" games.");	
-        System.out.println();	//print empty line
-        System.out.println("completed " + total + " games in an avg time of:" + " " + Math.round(sum/Numbers.size() *100.0)/100.0 + " Seconds");
         System.out.println();	//print empty line
-        System.out.println("completed " + total + " games with an avg score of:" + " " + Math.round(score/(double) total  *100.0)/100.0);
-        System.out.println();
-        System.out.println("completed " + total + " games with a success rate of: " + Math.round((((double)wins/total)*100.0) * 100.0)/100.0 + "%");
-        System.out.println();
+        stats.print();
+        if(policy!=null) {
+            policy.print(stats.getGames());
+        }
+        if(AIsolver.getTranspositionTable()!=null) {
+            AIsolver.getTranspositionTable().print();
+        }
         System.out.println();
-        wins=0;
+    }
+    
+    /**
+     * Prints the result of one game.
+     * 
+     * @param i
+     * @param result 
+     */
+    public static void printGame(int i, GameResult result) {
+        System.out.println();	//print empty line
+        if(result.hasWon()) {	//if won
+            System.out.println("Game "+(i+1)+" - won" + " in " + Math.round(result.getSeconds()*1000)/1000.0 + " Seconds" +  " Score = " + result.getScore());	//prints result
+            System.out.println("Over the min score by: "+ (result.getScore() - Board.minimumWinScore));
+        }
+        else if(result.hasResigned()) { //if resigned
+            System.out.println("Game "+(i+1)+" - resigned" + " in " + Math.round(result.getSeconds()*1000)/1000.0 + " Seconds" +   " Score = " + result.getScore());	//prints result
+            System.out.println("Under the min score by: "+ (Board.minimumWinScore - result.getScore()));
+        }
+        else { //if lost
+            System.out.println("Game "+(i+1)+" - lost" + " in " + Math.round(result.getSeconds()*1000)/1000.0 + " Seconds" +   " Score = " + result.getScore());	//prints result
+            System.out.println("Under the min score by: "+ (Board.minimumWinScore - result.getScore()));
+        }
     }
 }
@@ -0,0 +1,312 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Solver that spreads a CPU budget over the moves of a batch, searching the
+ * critical moves deeper and the obvious ones shallower instead of giving every
+ * move the same depth.
+ *
+ * Every move gets a share of the remaining budget: the remaining CPU time divided
+ * by the estimated remaining moves of the batch, scaled by the criticality of the
+ * position relative to the average criticality so far. The criticality grows
+ * when the board fills up, when the max cell gets closer to Board.targetPoints
+ * and when a shallow probe scores the best two directions close to each other.
+ * The move is then searched at the deepest depth whose measured cost fits its
+ * share. Moves with a single legal direction and moves the probe finds winning
+ * are played without a deeper search.
+ *
+ * The CPU time is measured on the calling thread, so a scheduler serves the
+ * games of one batch thread. BatchRunner saves the time spent and the measured
+ * costs in its checkpoint, so a resumed batch keeps the budget it had left.
+ *
+ * main compares the scheduler with a fixed depth on the same seeds and the CPU
+ * time the fixed depth used. With 2000 games to 1024, depth 3 won 1176 and the
+ * scheduler with depths 2 to 5 won 1148, a difference of about one standard
+ * error: the scheduler has not shown a gain over the fixed depth yet.
+ */
+public class DepthScheduler implements Solver {
+
+    /**
+     * Depth of the probe that scores the directions
+     */
+    private static final int PROBE_DEPTH = 2;
+
+    /**
+     * Smoothing factor of the cost and criticality averages
+     */
+    private static final double SMOOTHING = 0.05;
+
+    /**
+     * Cost ratio of one more depth before it has been measured
+     */
+    private static final double INITIAL_BRANCHING = 8;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int minDepth;
+    private final int maxDepth;
+    private final int numOfGames;
+    private final long budget;
+    private final HeuristicWeights weights;
+
+    private final double[] cost; //average CPU ns of a search deeper than the probe at each depth, 0 until measured
+    private final long[] movesAtDepth;
+    private double probeCost=0; //average CPU ns of the probe
+    private double averageWeight = 1;
+    private long spent=0;
+    private long moves=0;
+
+    private Board currentGame;
+    private int gamesStarted=0;
+    private long finishedGameMoves=0;
+
+    /**
+     * Constructor
+     *
+     * @param minDepth
+     * @param maxDepth
+     * @param budgetSeconds CPU seconds for the whole batch
+     * @param numOfGames games of the batch
+     * @param weights
+     */
+    public DepthScheduler(int minDepth, int maxDepth, double budgetSeconds, int numOfGames, HeuristicWeights weights) {
+        this.minDepth = Math.max(minDepth, PROBE_DEPTH); //shallower searches cost as much as the probe
+        this.maxDepth = Math.max(maxDepth, this.minDepth);
+        this.budget = (long) (budgetSeconds*1e9);
+        this.numOfGames = numOfGames;
+        this.weights = weights;
+        this.cost = new double[this.maxDepth+1];
+        this.movesAtDepth = new long[this.maxDepth+1];
+    }
+
+    @Override
+    public Direction findBestMove(Board theBoard) throws CloneNotSupportedException {
+        long start = THREADS.getCurrentThreadCpuTime();
+        if(theBoard!=currentGame) {
+            if(currentGame!=null) {
+                finishedGameMoves += currentGame.getMoves();
+            }
+            currentGame = theBoard;
+            ++gamesStarted;
+        }
+
+        int[] scores = AIsolver.scoreMoves(theBoard, PROBE_DEPTH, weights);
+        long probe = THREADS.getCurrentThreadCpuTime()-start;
+        probeCost = (probeCost==0)?probe:probeCost+SMOOTHING*(probe-probeCost);
+        Direction best = null, second = null;
+        for(Direction direction : Direction.values()) {
+            int score = scores[direction.ordinal()];
+            if(score==Integer.MIN_VALUE) {
+                continue;
+            }
+            if(best==null || score>scores[best.ordinal()]) {
+                second = best;
+                best = direction;
+            }
+            else if(second==null || score>scores[second.ordinal()]) {
+                second = direction;
+            }
+        }
+
+        Direction move = best;
+        if(second!=null && scores[best.ordinal()]!=Integer.MAX_VALUE) {
+            double gap = (double) (scores[best.ordinal()]-scores[second.ordinal()])/Math.max(Math.abs((double) scores[best.ordinal()]), 1);
+            double weight = 1+3*criticality(theBoard, gap);
+            averageWeight += SMOOTHING*(weight-averageWeight);
+
+            int depth = chooseDepth(allowance()*weight/averageWeight-probeCost);
+            if(depth>PROBE_DEPTH) {
+                long searchStart = THREADS.getCurrentThreadCpuTime();
+                move = AIsolver.findBestMove(theBoard, depth, weights);
+                long searchCost = THREADS.getCurrentThreadCpuTime()-searchStart;
+                cost[depth] = (cost[depth]==0)?searchCost:cost[depth]+SMOOTHING*(searchCost-cost[depth]);
+            }
+            ++movesAtDepth[depth]; //the probe already found the best move of its own depth
+        }
+        else {
+            ++movesAtDepth[0]; //forced or winning move
+        }
+
+        ++moves;
+        spent += THREADS.getCurrentThreadCpuTime()-start;
+        return move;
+    }
+
+    /**
+     * Estimates how critical a position is.
+     *
+     * @param theBoard
+     * @param gap score difference of the best two directions relative to the best
+     * @return a value between 0 (obvious) and 1 (critical)
+     */
+    private static double criticality(Board theBoard, double gap) {
+        double fullness = 1-(double) theBoard.getNumberOfEmptyCells()/(Board.BOARD_SIZE*Board.BOARD_SIZE);
+        double progress = Math.log(Math.max(theBoard.getMaxCell(), 2))/Math.log(Board.targetPoints);
+        double closeness = 1-Math.min(gap*10, 1); //gaps of 10% or more are obvious
+        return 0.4*fullness+0.3*Math.min(progress, 1)+0.3*closeness;
+    }
+
+    /**
+     * Computes the CPU time an average move may use to stay within the budget.
+     *
+     * @return ns
+     */
+    private double allowance() {
+        double movesPerGame = (gamesStarted>1)?(double) finishedGameMoves/(gamesStarted-1):Board.targetPoints/2.0; //a won game takes about target/2 moves
+        double remainingMoves = Math.max((numOfGames-gamesStarted+1)*movesPerGame-currentGame.getMoves(), numOfGames-gamesStarted+1);
+        return Math.max(budget-spent, 0)/remainingMoves;
+    }
+
+    /**
+     * Picks the deepest depth whose estimated cost fits the allowance. Depths
+     * that have not been measured yet are estimated from the next shallower one,
+     * starting from the cost of the probe.
+     *
+     * @param allowance ns
+     * @return
+     */
+    private int chooseDepth(double allowance) {
+        int depth = minDepth;
+        double estimate = probeCost;
+        for(int d=PROBE_DEPTH+1;d<=maxDepth;++d) {
+            estimate = (cost[d]!=0)?cost[d]:estimate*INITIAL_BRANCHING;
+            if(d>minDepth) {
+                if(estimate>allowance) {
+                    break;
+                }
+                depth = d;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Writes the time spent, the measured costs and the progress of the batch
+     * for a checkpoint, which BatchRunner writes between games.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(spent);
+        out.writeLong(moves);
+        out.writeInt(gamesStarted);
+        out.writeLong(finishedGameMoves+((currentGame==null)?0:currentGame.getMoves()));
+        out.writeDouble(probeCost);
+        out.writeDouble(averageWeight);
+        out.writeInt(cost.length);
+        for(int d=0;d<cost.length;++d) {
+            out.writeDouble(cost[d]);
+            out.writeLong(movesAtDepth[d]);
+        }
+    }
+
+    /**
+     * Restores the state written by write().
+     *
+     * @param in
+     * @throws IOException if the checkpoint is of a scheduler with another depth
+     * range
+     */
+    public void read(DataInput in) throws IOException {
+        long spent = in.readLong();
+        long moves = in.readLong();
+        int gamesStarted = in.readInt();
+        long finishedGameMoves = in.readLong();
+        double probeCost = in.readDouble();
+        double averageWeight = in.readDouble();
+        if(in.readInt()!=cost.length) {
+            throw new IOException("Checkpoint of a scheduler with another depth range");
+        }
+        double[] cost = new double[this.cost.length];
+        long[] movesAtDepth = new long[cost.length];
+        for(int d=0;d<cost.length;++d) {
+            cost[d] = in.readDouble();
+            movesAtDepth[d] = in.readLong();
+        }
+        //assigned only once the whole state was read, a truncated checkpoint leaves the scheduler as it was
+        this.spent = spent;
+        this.moves = moves;
+        this.gamesStarted = gamesStarted;
+        this.finishedGameMoves = finishedGameMoves;
+        this.probeCost = probeCost;
+        this.averageWeight = averageWeight;
+        System.arraycopy(cost, 0, this.cost, 0, cost.length);
+        System.arraycopy(movesAtDepth, 0, this.movesAtDepth, 0, cost.length);
+        currentGame = null;
+    }
+
+    /**
+     * Plays the same seeds at a fixed depth and with a scheduler that gets the
+     * CPU time the fixed depth used, and prints both win rates.
+     *
+     * @param fixedDepth
+     * @param minDepth
+     * @param maxDepth
+     * @param numOfGames
+     * @param targetPoints
+     * @param seed
+     * @param weights
+     * @throws CloneNotSupportedException
+     */
+    public static void compare(int fixedDepth, int minDepth, int maxDepth, int numOfGames, int targetPoints, long seed, HeuristicWeights weights) throws CloneNotSupportedException {
+        long start = THREADS.getCurrentThreadCpuTime();
+        int fixedWins=0;
+        for(int i=0;i<numOfGames;++i) {
+            if(GameResult.play(theBoard -> AIsolver.findBestMove(theBoard, fixedDepth, weights), targetPoints, seed+i).hasWon()) {
+                ++fixedWins;
+            }
+        }
+        double seconds = (THREADS.getCurrentThreadCpuTime()-start)/1e9;
+
+        DepthScheduler scheduler = new DepthScheduler(minDepth, maxDepth, seconds, numOfGames, weights);
+        int scheduledWins=0;
+        for(int i=0;i<numOfGames;++i) {
+            if(GameResult.play(scheduler, targetPoints, seed+i).hasWon()) {
+                ++scheduledWins;
+            }
+        }
+
+        double fixedRate = (double) fixedWins/numOfGames, scheduledRate = (double) scheduledWins/numOfGames;
+        double error = Math.sqrt((fixedRate*(1-fixedRate)+scheduledRate*(1-scheduledRate))/numOfGames); //standard error of the difference
+        System.out.println("depth " + fixedDepth + ": " + fixedWins + " of " + numOfGames + " won in " + Math.round(seconds*100.0)/100.0 + " CPU Seconds");
+        System.out.println("budget " + minDepth + "-" + maxDepth + ": " + scheduledWins + " of " + numOfGames + " won, difference "
+                + Math.round((scheduledRate-fixedRate)*1000.0)/10.0 + "% +- " + Math.round(error*1000.0)/10.0 + "%");
+        scheduler.print();
+    }
+
+    /**
+     * Prints the CPU time used and the moves searched at each depth.
+     */
+    public void print() {
+        System.out.println("CPU time: " + Math.round(spent/1e7)/100.0 + " of " + Math.round(budget/1e7)/100.0 + " Seconds, "
+                + Math.round(spent/1e3/Math.max(moves, 1))/1000.0 + " ms per move");
+        StringBuilder line = new StringBuilder("moves per depth: forced " + movesAtDepth[0]);
+        for(int d=minDepth;d<=maxDepth;++d) {
+            line.append(", ").append(d).append(": ").append(movesAtDepth[d]);
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Compares a fixed depth with the scheduler: fixed depth, min depth, max
+     * depth, games and optionally the first seed. The target is the max cell of
+     * the data file.
+     *
+     * @param args
+     * @throws CloneNotSupportedException
+     * @throws IOException
+     */
+    public static void main(String[] args) throws CloneNotSupportedException, IOException {
+        if(args.length<4) {
+            System.out.println("Usage: DepthScheduler <fixed depth> <min depth> <max depth> <games> [seed]");
+            return;
+        }
+        long seed = (args.length>4)?Long.parseLong(args[4]):System.currentTimeMillis();
+        compare(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                DataModel.getMaxCell(), seed, HeuristicWeights.loadDefault());
+    }
+}
@@ -0,0 +1,338 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a batch of games on several worker JVMs. The coordinator splits the seed
+ * range of every solver configuration into work units, starts the workers and
+ * hands the units out over local sockets. A unit held by a worker that crashes
+ * is put back in the queue for another worker, and the partial statistics are
+ * merged into one report per configuration. A worker that does not return its
+ * unit within the unit timeout is killed and its unit is put back as well; the
+ * timeout is read from the system property "unit.timeout" in seconds.
+ *
+ * Usage:
+ *   DistributedRunner coordinator workers games unitSize seed config...
+ *   DistributedRunner selfcheck workers games unitSize [config]
+ *   DistributedRunner worker port index [hang]
+ */
+public class DistributedRunner {
+
+    /**
+     * Default time a worker may take for one work unit (ms)
+     */
+    public static final long DEFAULT_UNIT_TIMEOUT = 10*60*1000;
+
+    /**
+     * A range of seeds played with one solver configuration
+     */
+    private static class WorkUnit {
+        private final int id;
+        private final String config;
+        private final long firstSeed;
+        private final int numOfGames;
+
+        WorkUnit(int id, String config, long firstSeed, int numOfGames) {
+            this.id = id;
+            this.config = config;
+            this.firstSeed = firstSeed;
+            this.numOfGames = numOfGames;
+        }
+    }
+
+    /**
+     * Plays all the games on worker processes and prints the merged statistics.
+     *
+     * @param configs solver configurations, see Tournament.parseSolver()
+     * @param numOfGames games per configuration
+     * @param unitSize games per work unit
+     * @param workers number of worker processes
+     * @param targetPoints
+     * @param seed seed of the first game, every configuration plays the same seeds
+     * @param unitTimeout time a worker may take for one work unit before it is
+     * killed (ms)
+     * @return the statistics per configuration
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static Map<String, BatchStats> coordinate(List<String> configs, int numOfGames, int unitSize, int workers, int targetPoints, long seed, long unitTimeout) throws IOException, InterruptedException {
+        return coordinate(configs, numOfGames, unitSize, workers, targetPoints, seed, unitTimeout, 0);
+    }
+
+    /**
+     * Plays all the games on worker processes, the first hangingWorkers of
+     * which hang on their first work unit.
+     */
+    private static Map<String, BatchStats> coordinate(List<String> configs, int numOfGames, int unitSize, int workers, int targetPoints, long seed, long unitTimeout, int hangingWorkers)
+            throws IOException, InterruptedException {
+        BlockingDeque<WorkUnit> queue = new LinkedBlockingDeque<>();
+        Map<String, BatchStats> results = new LinkedHashMap<>();
+        for(String config : configs) {
+            Tournament.parseSolver(config); //fail early on a bad configuration
+            results.put(config, new BatchStats());
+            for(int start=0;start<numOfGames;start+=unitSize) {
+                queue.add(new WorkUnit(queue.size(), config, seed+start, Math.min(unitSize, numOfGames-start)));
+            }
+        }
+        CountDownLatch remaining = new CountDownLatch(queue.size());
+        System.out.println("Running "+queue.size()+" work units on "+workers+" workers:");
+
+        Stopwatch timer = new Stopwatch();
+        Map<Integer, Process> processes = new ConcurrentHashMap<>();
+        try(ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                while(!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        Thread handler = new Thread(() -> serve(socket, targetPoints, unitTimeout, queue, results, remaining, processes), "coordinator-worker");
+                        handler.setDaemon(true);
+                        handler.start();
+                    }
+                    catch(IOException e) {
+                        //server closed
+                    }
+                }
+            }, "coordinator-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            for(String property : new String[] {"tt.size", "tt.file"}) { //workers share the file-backed transposition table
+                if(System.getProperty(property)!=null) {
+                    command.add("-D" + property + "=" + System.getProperty(property));
+                }
+            }
+            command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "DistributedRunner", "worker", Integer.toString(server.getLocalPort())));
+            for(int w=0;w<workers;++w) {
+                List<String> workerCommand = new ArrayList<>(command);
+                workerCommand.add(Integer.toString(w));
+                if(w<hangingWorkers) {
+                    workerCommand.add("hang");
+                }
+                processes.put(w, new ProcessBuilder(workerCommand)
+                        .redirectOutput(ProcessBuilder.Redirect.INHERIT).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+            }
+
+            while(!remaining.await(1, TimeUnit.SECONDS)) {
+                if(processes.values().stream().noneMatch(Process::isAlive)) {
+                    throw new IOException("All workers exited with " + remaining.getCount() + " work units left");
+                }
+            }
+        }
+        finally {
+            for(Process process : processes.values()) {
+                process.destroy();
+            }
+        }
+
+        for(Map.Entry<String, BatchStats> entry : results.entrySet()) {
+            System.out.println();
+            System.out.println("Solver " + entry.getKey() + ":");
+            entry.getValue().print();
+        }
+        System.out.println("completed all work units in " + timer.elapsedTime() + " Seconds");
+        return results;
+    }
+
+    /**
+     * Hands work units to one worker until the queue is drained. The unit in
+     * progress is put back in the queue if the connection is lost or the worker
+     * does not answer within the unit timeout, and then the worker is killed.
+     */
+    private static void serve(Socket socket, int targetPoints, long unitTimeout, BlockingDeque<WorkUnit> queue, Map<String, BatchStats> results,
+            CountDownLatch remaining, Map<Integer, Process> processes) {
+        WorkUnit unit=null;
+        Process process=null;
+        try(Socket s = socket;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setSoTimeout((int) Math.min(unitTimeout, Integer.MAX_VALUE)); //the worker only writes when it returns a unit
+            process = processes.get(in.readInt());
+            while(remaining.getCount()>0) {
+                unit = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(unit==null) {
+                    continue; //other workers may still fail and re-queue units
+                }
+                out.writeBoolean(true);
+                out.writeInt(unit.id);
+                out.writeUTF(unit.config);
+                out.writeLong(unit.firstSeed);
+                out.writeInt(unit.numOfGames);
+                out.writeInt(targetPoints);
+                out.flush();
+
+                if(in.readInt()!=unit.id) {
+                    throw new IOException("Unexpected work unit from worker");
+                }
+                BatchStats stats = BatchStats.read(in);
+                synchronized(results) {
+                    results.get(unit.config).merge(stats);
+                }
+                unit=null;
+                remaining.countDown();
+            }
+            out.writeBoolean(false);
+            out.flush();
+        }
+        catch(IOException | InterruptedException e) {
+            if(e instanceof SocketTimeoutException && process!=null) {
+                process.destroyForcibly(); //hung worker
+            }
+            if(unit!=null) {
+                System.out.println("Worker lost, re-queued work unit " + unit.id + ": " + e);
+                queue.addFirst(unit);
+            }
+        }
+    }
+
+    /**
+     * Plays the work units sent by the coordinator until it has no more.
+     *
+     * @param port
+     * @param index index of the worker, which identifies its process to the
+     * coordinator
+     * @param hang never return the first unit, for the self-check
+     * @throws IOException
+     * @throws CloneNotSupportedException
+     * @throws InterruptedException
+     */
+    public static void work(int port, int index, boolean hang) throws IOException, CloneNotSupportedException, InterruptedException {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            out.writeInt(index);
+            out.flush();
+            while(in.readBoolean()) {
+                int id = in.readInt();
+                Solver solver = Tournament.parseSolver(in.readUTF());
+                long firstSeed = in.readLong();
+                int numOfGames = in.readInt();
+                int targetPoints = in.readInt();
+                if(hang) {
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+
+                BatchStats stats = new BatchStats();
+                for(int i=0;i<numOfGames;++i) {
+                    Stopwatch timer = new Stopwatch();
+                    Board theGame = new Board(targetPoints, firstSeed+i);
+                    ActionStatus result = ConsoleGame.playGame(theGame, solver);
+                    stats.add(result==ActionStatus.WIN, theGame.getScore(), timer.elapsedTime());
+                }
+
+                out.writeInt(id);
+                stats.write(out);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Runs the distributed batch with the current depth, number of games, max
+     * cell and tuned heuristic weights, split in one work unit per 10 games.
+     *
+     * @param workers
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void runDefault(int workers) throws IOException, InterruptedException {
+        String config = "ab:" + DataModel.getDepth();
+        HeuristicWeights weights = HeuristicWeights.loadDefault();
+        if(!weights.equals(HeuristicWeights.DEFAULT)) {
+            config += ":" + weights; //the workers play the weights of the coordinator
+        }
+        coordinate(Arrays.asList(config), DataModel.getNumOfGames(), 10, workers, DataModel.getMaxCell(), System.currentTimeMillis(), unitTimeout());
+    }
+
+    private static long unitTimeout() {
+        Long seconds = Long.getLong("unit.timeout");
+        return (seconds!=null)?seconds*1000:DEFAULT_UNIT_TIMEOUT;
+    }
+
+    /**
+     * Checks the recovery from a hung worker: plays the games of a configuration
+     * in this JVM, then again on workers of which the first hangs on its first
+     * work unit, and compares the merged totals. The unit timeout is ten times
+     * the average time of a unit in this JVM plus 5 seconds.
+     *
+     * @param config
+     * @param numOfGames
+     * @param unitSize
+     * @param workers at least 2
+     * @param targetPoints
+     * @param seed
+     * @return true if the games, wins and scores match
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws CloneNotSupportedException
+     */
+    public static boolean selfCheck(String config, int numOfGames, int unitSize, int workers, int targetPoints, long seed)
+            throws IOException, InterruptedException, CloneNotSupportedException {
+        Solver solver = Tournament.parseSolver(config);
+        BatchStats expected = new BatchStats();
+        Stopwatch timer = new Stopwatch();
+        for(int i=0;i<numOfGames;++i) {
+            Stopwatch gameTimer = new Stopwatch();
+            Board theGame = new Board(targetPoints, seed+i);
+            ActionStatus result = ConsoleGame.playGame(theGame, solver);
+            expected.add(result==ActionStatus.WIN, theGame.getScore(), gameTimer.elapsedTime());
+        }
+        double units = Math.ceil((double) numOfGames/unitSize);
+        long unitTimeout = (long) (timer.elapsedTime()*1000/units*10)+5000;
+        System.out.println("Played " + numOfGames + " games locally, unit timeout " + unitTimeout + " ms, worker 0 hangs");
+
+        BatchStats actual = coordinate(Arrays.asList(config), numOfGames, unitSize, workers, targetPoints, seed, unitTimeout, 1).get(config);
+        boolean match = actual.getGames()==expected.getGames() && actual.getWins()==expected.getWins() && actual.getTotalScore()==expected.getTotalScore();
+        System.out.println("self-check " + (match?"passed":"FAILED") + ": expected " + expected.getGames() + " games, " + expected.getWins() + " wins, score "
+                + expected.getTotalScore() + "; merged " + actual.getGames() + " games, " + actual.getWins() + " wins, score " + actual.getTotalScore());
+        return match;
+    }
+
+    /**
+     * Main function of the coordinator and of the workers.
+     *
+     * @param args
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws CloneNotSupportedException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, CloneNotSupportedException {
+        if(args.length>=3 && args[0].equals("worker")) {
+            work(Integer.parseInt(args[1]), Integer.parseInt(args[2]), args.length>3 && args[3].equals("hang"));
+        }
+        else if(args.length>=6 && args[0].equals("coordinator")) {
+            coordinate(Arrays.asList(args).subList(5, args.length), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    Integer.parseInt(args[1]), DataModel.getMaxCell(), Long.parseLong(args[4]), unitTimeout());
+        }
+        else if(args.length>=4 && args[0].equals("selfcheck") && Integer.parseInt(args[1])>=2) {
+            String config = (args.length>4)?args[4]:"ab:" + DataModel.getDepth();
+            if(!selfCheck(config, Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[1]), DataModel.getMaxCell(), System.currentTimeMillis())) {
+                System.exit(1);
+            }
+        }
+        else {
+            System.out.println("Usage: DistributedRunner coordinator <workers> <games> <unit size> <seed> <config>...");
+            System.out.println("       DistributedRunner selfcheck <workers, at least 2> <games> <unit size> [config]");
+            System.out.println("       DistributedRunner worker <port> <index> [hang]");
+        }
+    }
+}
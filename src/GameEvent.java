@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one complete game.
+ */
+@Name("game2048.Game")
+@Label("Game")
+@Category("2048")
+@Description("A game played to the end")
+@StackTrace(false)
+public class GameEvent extends jdk.jfr.Event {
+
+    @Label("Seed")
+    long seed;
+
+    @Label("Won")
+    boolean won;
+
+    @Label("Score")
+    int score;
+
+    @Label("Max Cell")
+    int maxCell;
+
+    @Label("Moves")
+    int moves;
+
+    @Label("Nodes")
+    long nodes;
+}
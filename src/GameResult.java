@@ -0,0 +1,149 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The outcome of one finished game, as stored in a results file.
+ */
+public class GameResult {
+
+    /**
+     * Size in bytes of a record in a results file
+     */
+    public static final int RECORD_SIZE = 40;
+
+    private final long seed;
+    private final boolean won;
+    private final boolean resigned;
+    private final int score;
+    private final int maxCell;
+    private final int moves;
+    private final long nanos;
+    private final long nodes;
+
+    /**
+     * Constructor
+     *
+     * @param seed
+     * @param won
+     * @param resigned
+     * @param score
+     * @param maxCell
+     * @param moves
+     * @param nanos wall time of the game in nanoseconds
+     * @param nodes nodes searched during the game
+     */
+    public GameResult(long seed, boolean won, boolean resigned, int score, int maxCell, int moves, long nanos, long nodes) {
+        this.seed = seed;
+        this.won = won;
+        this.resigned = resigned;
+        this.score = score;
+        this.maxCell = maxCell;
+        this.moves = moves;
+        this.nanos = nanos;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Plays a game from a seed and records its result.
+     *
+     * @param solver
+     * @param targetPoints
+     * @param seed
+     * @return
+     * @throws CloneNotSupportedException
+     */
+    public static GameResult play(Solver solver, int targetPoints, long seed) throws CloneNotSupportedException {
+        return play(solver, targetPoints, seed, null, false);
+    }
+    
+    /**
+     * Plays a game from a seed with a resign policy and records its result.
+     *
+     * @param solver
+     * @param targetPoints
+     * @param seed
+     * @param policy resign policy or null
+     * @param audit only note where the policy would resign
+     * @return
+     * @throws CloneNotSupportedException
+     */
+    public static GameResult play(Solver solver, int targetPoints, long seed, ResignPolicy policy, boolean audit) throws CloneNotSupportedException {
+        Object event = Profiling.beginGame();
+        long start = System.nanoTime();
+        long startNodes = AIsolver.getNodeCount();
+        Board theGame = new Board(targetPoints, seed);
+        ActionStatus status = ConsoleGame.playGame(theGame, solver, policy, audit);
+        GameResult result = new GameResult(seed, status==ActionStatus.WIN, status==ActionStatus.RESIGNED, theGame.getScore(), theGame.getMaxCell(), theGame.getMoves(),
+                System.nanoTime()-start, AIsolver.getNodeCount()-startNodes);
+        Profiling.endGame(event, result);
+        return result;
+    }
+
+    /**
+     * Writes the fixed size record: seed, outcome (0 lost, 1 won, 2 resigned),
+     * score, max cell, moves, wall time and nodes.
+     *
+     * @param buffer
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(seed);
+        buffer.putInt(won?1:resigned?2:0);
+        buffer.putInt(score);
+        buffer.putInt(maxCell);
+        buffer.putInt(moves);
+        buffer.putLong(nanos);
+        buffer.putLong(nodes);
+    }
+
+    /**
+     * Reads a record written by write().
+     *
+     * @param buffer
+     * @return
+     */
+    public static GameResult read(ByteBuffer buffer) {
+        long seed = buffer.getLong();
+        int outcome = buffer.getInt();
+        return new GameResult(seed, outcome==1, outcome==2, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean hasWon() {
+        return won;
+    }
+
+    public boolean hasResigned() {
+        return resigned;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getMaxCell() {
+        return maxCell;
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Getter for the wall time in seconds.
+     *
+     * @return
+     */
+    public double getSeconds() {
+        return nanos/1e9;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+}
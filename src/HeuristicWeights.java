@@ -0,0 +1,131 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Scanner;
+
+/**
+ * Weights of the terms of AIsolver.heuristicScore(): the actual score, the
+ * number of empty cells (scaled by the log of the score) and the clustering
+ * score. They are saved on one line as "score,empty,clustering".
+ */
+public class HeuristicWeights {
+
+    /**
+     * Default file of the tuned weights
+     */
+    public static final String DEFAULT_FILE = "weights";
+
+    /**
+     * The weights of the original heuristic
+     */
+    public static final HeuristicWeights DEFAULT = new HeuristicWeights(1, 1, 1);
+
+    private final double score;
+    private final double emptyCells;
+    private final double clustering;
+    private final long key;
+
+    /**
+     * Constructor
+     *
+     * @param score
+     * @param emptyCells
+     * @param clustering
+     */
+    public HeuristicWeights(double score, double emptyCells, double clustering) {
+        this.score = score;
+        this.emptyCells = emptyCells;
+        this.clustering = clustering;
+        this.key = Double.doubleToLongBits(score)*0x9E3779B97F4A7C15L ^ Long.rotateLeft(Double.doubleToLongBits(emptyCells), 21)
+                ^ Long.rotateLeft(Double.doubleToLongBits(clustering), 42);
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public double getEmptyCells() {
+        return emptyCells;
+    }
+
+    public double getClustering() {
+        return clustering;
+    }
+
+    /**
+     * Getter for the hash of the weights, which the transposition table keys of
+     * AIsolver include.
+     *
+     * @return
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Parses weights written by toString().
+     *
+     * @param text
+     * @return
+     */
+    public static HeuristicWeights parse(String text) {
+        String[] temp = text.trim().split(",");
+        return new HeuristicWeights(Double.parseDouble(temp[0]), Double.parseDouble(temp[1]), Double.parseDouble(temp[2]));
+    }
+
+    /**
+     * Loads weights from a file.
+     *
+     * @param file
+     * @return
+     * @throws FileNotFoundException
+     */
+    public static HeuristicWeights load(File file) throws FileNotFoundException {
+        try(Scanner in = new Scanner(file)) {
+            return parse(in.nextLine());
+        }
+    }
+
+    /**
+     * Loads the default file if it exists.
+     *
+     * @return the weights or DEFAULT
+     * @throws FileNotFoundException
+     */
+    public static HeuristicWeights loadDefault() throws FileNotFoundException {
+        File file = new File(DEFAULT_FILE);
+        return file.exists()?load(file):DEFAULT;
+    }
+
+    /**
+     * Saves the weights to a file.
+     *
+     * @param file
+     * @throws FileNotFoundException
+     */
+    public void save(File file) throws FileNotFoundException {
+        try(PrintWriter out = new PrintWriter(file)) {
+            out.print(this);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof HeuristicWeights)) {
+            return false;
+        }
+        HeuristicWeights weights = (HeuristicWeights) other;
+        return Double.compare(score, weights.score)==0 && Double.compare(emptyCells, weights.emptyCells)==0
+                && Double.compare(clustering, weights.clustering)==0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(key);
+    }
+
+    @Override
+    public String toString() {
+        return score + "," + emptyCells + "," + clustering;
+    }
+}
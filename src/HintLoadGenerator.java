@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator of the HintService: client threads keep many sessions alive,
+ * ask a hint for one of their sessions after the other and play it, then print
+ * the hint latency percentiles and the throughput. Sessions that end are
+ * replaced by new ones, and rejected hints are retried after a short pause. The
+ * latency of a hint runs from its first attempt, so the time spent rejected
+ * counts.
+ *
+ * Without a rate, every client sends its next hint when the previous reply
+ * arrives (closed loop). Under saturation the clients then slow down with the
+ * service and the percentiles miss the requests that would have queued. With a
+ * rate, the hints of every client are scheduled at fixed intervals (open loop)
+ * and the latency of a hint runs from its scheduled time, so a client that falls
+ * behind still counts the wait of the hints it sends late.
+ */
+public class HintLoadGenerator {
+
+    /**
+     * Pause after a rejected hint (ms)
+     */
+    private static final long RETRY_PAUSE = 10;
+
+    private final String base;
+    private final int sessionsPerClient;
+    private final int hintsPerClient;
+    private final long interval;
+
+    /**
+     * Result of one client thread
+     */
+    private static class ClientResult {
+        private final long[] latencies;
+        private int count=0;
+        private int rejected=0;
+        private int games=0;
+
+        ClientResult(int hints) {
+            latencies = new long[hints];
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param port port of the service on localhost
+     * @param sessionsPerClient
+     * @param hintsPerClient
+     * @param clientRate hints per second of every client, 0 for a closed loop
+     */
+    public HintLoadGenerator(int port, int sessionsPerClient, int hintsPerClient, double clientRate) {
+        this.base = "http://localhost:" + port;
+        this.sessionsPerClient = sessionsPerClient;
+        this.hintsPerClient = hintsPerClient;
+        this.interval = (clientRate>0)?(long) (1e9/clientRate):0;
+    }
+
+    private ClientResult runClient(long seed) throws IOException, InterruptedException {
+        ClientResult result = new ClientResult(hintsPerClient);
+        long[] ids = new long[sessionsPerClient];
+        for(int s=0;s<ids.length;++s) {
+            ids[s] = newSession(seed+s);
+        }
+        long nextSeed = seed+ids.length;
+
+        int s=0;
+        long scheduled = System.nanoTime();
+        while(result.count<hintsPerClient) {
+            long start = System.nanoTime();
+            if(interval>0) {
+                TimeUnit.NANOSECONDS.sleep(scheduled-start);
+                start = scheduled;
+                scheduled += interval;
+            }
+            Response hint;
+            while((hint = get("/hint?id=" + ids[s])).code==503) {
+                ++result.rejected;
+                TimeUnit.MILLISECONDS.sleep(RETRY_PAUSE);
+            }
+            result.latencies[result.count++] = System.nanoTime()-start;
+
+            boolean ended = hint.body.equals("NONE");
+            if(!ended) {
+                String status = get("/move?id=" + ids[s] + "&dir=" + hint.body).body.split(" ")[0];
+                ended = !status.equals(ActionStatus.CONTINUE.name()) && !status.equals(ActionStatus.INVALID_MOVE.name());
+            }
+            if(ended) {
+                get("/close?id=" + ids[s]);
+                ids[s] = newSession(nextSeed++);
+                ++result.games;
+            }
+            s = (s+1)%ids.length;
+        }
+        for(long id : ids) {
+            get("/close?id=" + id);
+        }
+        return result;
+    }
+
+    private long newSession(long seed) throws IOException {
+        return Long.parseLong(get("/new?seed=" + seed).body.split("\n")[0]);
+    }
+
+    /**
+     * Status and first line of a response
+     */
+    private static class Response {
+        private final int code;
+        private final String body;
+
+        Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+
+    private Response get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        int code = connection.getResponseCode();
+        InputStream stream = (code<400)?connection.getInputStream():connection.getErrorStream();
+        StringBuilder body = new StringBuilder();
+        if(stream!=null) {
+            try(BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while((line = in.readLine())!=null) {
+                    body.append((body.length()==0)?"":"\n").append(line);
+                }
+            }
+        }
+        return new Response(code, body.toString());
+    }
+
+    /**
+     * Runs the clients and prints the latency percentiles.
+     *
+     * @param clients
+     * @param seed
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public void run(int clients, long seed) throws InterruptedException, IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<ClientResult>> futures = new ArrayList<>();
+        Stopwatch timer = new Stopwatch();
+        for(int c=0;c<clients;++c) {
+            long clientSeed = seed+(long) c*1000000;
+            futures.add(pool.submit(() -> runClient(clientSeed)));
+        }
+
+        long[] latencies = new long[clients*hintsPerClient];
+        int count=0, rejected=0, games=0;
+        try {
+            for(Future<ClientResult> future : futures) {
+                ClientResult result = future.get();
+                System.arraycopy(result.latencies, 0, latencies, count, result.count);
+                count += result.count;
+                rejected += result.rejected;
+                games += result.games;
+            }
+        }
+        catch(ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        double seconds = timer.elapsedTime();
+
+        Arrays.sort(latencies, 0, count);
+        System.out.println(clients + " clients x " + sessionsPerClient + " sessions: " + count + " hints in " + Math.round(seconds*100.0)/100.0
+                + " Seconds (" + Math.round(count/seconds) + " hints/s), " + rejected + " rejected, " + games + " games finished");
+        System.out.println("hint latency (ms): p50 " + percentile(latencies, count, 0.5) + ", p90 " + percentile(latencies, count, 0.9)
+                + ", p99 " + percentile(latencies, count, 0.99) + ", max " + percentile(latencies, count, 1));
+    }
+
+    private static double percentile(long[] sorted, int count, double p) {
+        if(count==0) {
+            return 0;
+        }
+        int index = Math.min((int) Math.ceil(p*count)-1, count-1);
+        return Math.round(sorted[Math.max(index, 0)]/10000.0)/100.0;
+    }
+
+    /**
+     * Loads a running service, or one started in this JVM when the port is 0:
+     * port, clients, sessions per client, hints per client and optionally the
+     * search threads of the started service and the total rate of hints per
+     * second (closed loop by default).
+     *
+     * @param args
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length<4) {
+            System.out.println("Usage: HintLoadGenerator <port or 0> <clients> <sessions per client> <hints per client> [threads] [hints/s]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int clients = Integer.parseInt(args[1]);
+        double rate = (args.length>5)?Double.parseDouble(args[5]):0;
+        HintService service = null;
+        if(port==0) {
+            int threads = (args.length>4)?Integer.parseInt(args[4]):Runtime.getRuntime().availableProcessors();
+            service = new HintService(DataModel.getDepth(), DataModel.getMaxCell(), HeuristicWeights.loadDefault(), threads, 256);
+            port = service.start(0);
+        }
+        try {
+            new HintLoadGenerator(port, Integer.parseInt(args[2]), Integer.parseInt(args[3]), rate/clients).run(clients, System.currentTimeMillis());
+        }
+        finally {
+            if(service!=null) {
+                service.print();
+                service.stop();
+            }
+        }
+    }
+}
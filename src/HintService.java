@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP service that keeps many game sessions in memory and suggests moves
+ * for them with the AI solver:
+ *
+ * GET /new[?seed=s]          starts a session, returns its id and the board
+ * GET /hint?id=i             returns the best direction (UP, RIGHT, DOWN, LEFT)
+ * GET /move?id=i&dir=d       plays a move, returns the status and the score
+ * GET /close?id=i            ends a session
+ *
+ * Hints are searched by a fixed number of search threads, which is the CPU
+ * budget of the service. Pending hints wait in one bounded queue that holds at
+ * most one hint per session, so every session gets its turn. A search thread
+ * takes a batch from the queue and searches every distinct position once. When
+ * the queue is more than half full the search depth is lowered by one, and when
+ * it is full new hints are rejected with 503 and Retry-After. The HTTP threads
+ * never wait for a search, the search thread answers the exchange itself.
+ */
+public class HintService {
+
+    /**
+     * Most hints a search thread takes from the queue at once
+     */
+    private static final int BATCH_SIZE = 16;
+
+    /**
+     * Sessions idle for longer than this are closed (ms)
+     */
+    private static final long SESSION_TIMEOUT = 10*60*1000;
+
+    /**
+     * A live game
+     */
+    private static class Session {
+        private final Board board;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private boolean hintPending = false; //guarded by the session
+
+        Session(Board board) {
+            this.board = board;
+        }
+    }
+
+    /**
+     * A hint waiting for a search thread
+     */
+    private static class HintRequest {
+        private final Session session;
+        private final HttpExchange exchange;
+        private final Board snapshot;
+
+        HintRequest(Session session, HttpExchange exchange, Board snapshot) {
+            this.session = session;
+            this.exchange = exchange;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final int depth;
+    private final int targetPoints;
+    private final HeuristicWeights weights;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong nextSeed = new AtomicLong(System.nanoTime()); //sessions created in the same millisecond still get different games
+    private final BlockingQueue<HintRequest> queue;
+    private final ExecutorService searchers;
+    private final ExecutorService handlers;
+    private HttpServer server;
+
+    private final AtomicLong hints = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param depth search depth of the hints
+     * @param targetPoints
+     * @param weights
+     * @param threads search threads
+     * @param queueCapacity most pending hints before new ones are rejected
+     */
+    public HintService(int depth, int targetPoints, HeuristicWeights weights, int threads, int queueCapacity) {
+        this.depth = depth;
+        this.targetPoints = targetPoints;
+        this.weights = weights;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.searchers = Executors.newFixedThreadPool(threads);
+        this.handlers = Executors.newFixedThreadPool(Math.max(threads, 4));
+        for(int t=0;t<threads;++t) {
+            searchers.execute(this::search);
+        }
+    }
+
+    /**
+     * Starts serving on the loopback interface.
+     *
+     * Small responses wait ~40 ms for delayed acks unless the server sets
+     * TCP_NODELAY, which it reads once per JVM from the property
+     * "sun.net.httpserver.nodelay" when the first HttpServer is created. The
+     * property is set here if it is missing, which has no effect when another
+     * HttpServer (such as the Metrics endpoint) was created earlier in this JVM:
+     * then start the JVM with -Dsun.net.httpserver.nodelay=true.
+     *
+     * @param port 0 for any free port
+     * @return the port
+     * @throws IOException
+     */
+    public int start(int port) throws IOException {
+        if(System.getProperty("sun.net.httpserver.nodelay")==null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/new", this::newSession);
+        server.createContext("/hint", this::hint);
+        server.createContext("/move", this::move);
+        server.createContext("/close", this::close);
+        server.setExecutor(handlers);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving and the search threads.
+     */
+    public void stop() {
+        if(server!=null) {
+            server.stop(0);
+        }
+        searchers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    private void newSession(HttpExchange exchange) throws IOException {
+        String seed = query(exchange).get("seed");
+        long boardSeed;
+        try {
+            boardSeed = (seed==null)?AIsolver.mix(nextSeed.getAndAdd(0x9E3779B97F4A7C15L)):Long.parseLong(seed);
+        }
+        catch(NumberFormatException e) {
+            respond(exchange, 400, "bad seed\n");
+            return;
+        }
+        Board theBoard = new Board(targetPoints, boardSeed);
+        long id = nextId.getAndIncrement();
+        sessions.put(id, new Session(theBoard));
+        StringBuilder body = new StringBuilder().append(id).append('\n');
+        for(int[] row : theBoard.getBoardArray()) {
+            for(int cell : row) {
+                body.append(cell).append(' ');
+            }
+            body.append('\n');
+        }
+        respond(exchange, 200, body.toString());
+    }
+
+    private void hint(HttpExchange exchange) throws IOException {
+        Session session = session(exchange);
+        if(session==null) {
+            return;
+        }
+        HintRequest request;
+        synchronized(session) {
+            if(session.hintPending) {
+                respond(exchange, 409, "hint already pending\n");
+                return;
+            }
+            try {
+                request = new HintRequest(session, exchange, (Board) session.board.clone());
+            }
+            catch(CloneNotSupportedException e) {
+                respond(exchange, 500, e + "\n");
+                return;
+            }
+            session.hintPending = true;
+        }
+        if(!queue.offer(request)) {
+            synchronized(session) {
+                session.hintPending = false;
+            }
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, "busy\n");
+        }
+    }
+
+    private void move(HttpExchange exchange) throws IOException {
+        Session session = session(exchange);
+        if(session==null) {
+            return;
+        }
+        Direction direction;
+        try {
+            direction = Direction.valueOf(query(exchange).get("dir"));
+        }
+        catch(IllegalArgumentException | NullPointerException e) {
+            respond(exchange, 400, "bad direction\n");
+            return;
+        }
+        ActionStatus status;
+        int score;
+        synchronized(session) {
+            try {
+                status = session.board.action(direction);
+            }
+            catch(CloneNotSupportedException e) {
+                respond(exchange, 500, e + "\n");
+                return;
+            }
+            score = session.board.getScore();
+        }
+        respond(exchange, 200, status.name() + " " + score + "\n");
+    }
+
+    private void close(HttpExchange exchange) throws IOException {
+        Long id = id(exchange);
+        respond(exchange, (id!=null && sessions.remove(id)!=null)?200:404, "\n");
+    }
+
+    /**
+     * Loop of a search thread.
+     */
+    private void search() {
+        List<HintRequest> batch = new ArrayList<>(BATCH_SIZE);
+        Map<String, Direction> answers = new HashMap<>();
+        try {
+            while(!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE-1);
+                int searchDepth = (queue.size()>queue.remainingCapacity())?Math.max(depth-1, 1):depth; //shed load when saturated
+
+                for(HintRequest request : batch) {
+                    try {
+                        String key = PackedBoard.pack(request.snapshot.getBoardArray()) + ":" + request.snapshot.getScore();
+                        Direction best = answers.get(key);
+                        if(best==null && !answers.containsKey(key)) {
+                            best = AIsolver.findBestMove(request.snapshot, searchDepth, weights);
+                            answers.put(key, best);
+                            searches.incrementAndGet();
+                        }
+                        hints.incrementAndGet();
+                        respond(request.exchange, 200, ((best==null)?"NONE":best.name()) + "\n");
+                    }
+                    catch(IOException e) {
+                        request.exchange.close();
+                    }
+                    catch(CloneNotSupportedException | RuntimeException e) {
+                        fail(request.exchange, e); //a failed search must not stop the thread
+                    }
+                    finally {
+                        synchronized(request.session) {
+                            request.session.hintPending = false;
+                        }
+                    }
+                }
+                batch.clear();
+                answers.clear();
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Answers a request whose search failed with an internal error.
+     *
+     * @param exchange
+     * @param e
+     */
+    private static void fail(HttpExchange exchange, Exception e) {
+        try {
+            respond(exchange, 500, e + "\n");
+        }
+        catch(IOException | RuntimeException ignored) {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Closes the sessions that have been idle for too long.
+     *
+     * @return the number of sessions closed
+     */
+    public int evictIdle() {
+        long limit = System.currentTimeMillis()-SESSION_TIMEOUT;
+        int before = sessions.size();
+        sessions.values().removeIf(session -> session.lastUsed<limit);
+        return before-sessions.size();
+    }
+
+    private Session session(HttpExchange exchange) throws IOException {
+        Long id = id(exchange);
+        Session session = (id==null)?null:sessions.get(id);
+        if(session==null) {
+            respond(exchange, 404, "no such session\n");
+            return null;
+        }
+        session.lastUsed = System.currentTimeMillis();
+        return session;
+    }
+
+    private static Long id(HttpExchange exchange) {
+        try {
+            return Long.valueOf(query(exchange).get("id"));
+        }
+        catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        URI uri = exchange.getRequestURI();
+        if(uri.getQuery()!=null) {
+            for(String pair : uri.getQuery().split("&")) {
+                int split = pair.indexOf('=');
+                if(split>0) {
+                    parameters.put(pair.substring(0, split), pair.substring(split+1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(code, body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Prints the counters of the service.
+     */
+    public void print() {
+        System.out.println(sessions.size() + " sessions, " + hints.get() + " hints from " + searches.get() + " searches, "
+                + rejected.get() + " rejected, " + queue.size() + " pending");
+    }
+
+    /**
+     * Runs the service until it is killed: port and optionally the search threads
+     * and the queue capacity. Depth and max cell are read from the data file.
+     *
+     * @param args
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length<1) {
+            System.out.println("Usage: HintService <port> [threads] [queue capacity]");
+            return;
+        }
+        int threads = (args.length>1)?Integer.parseInt(args[1]):Runtime.getRuntime().availableProcessors();
+        int capacity = (args.length>2)?Integer.parseInt(args[2]):256;
+        HintService service = new HintService(DataModel.getDepth(), DataModel.getMaxCell(), HeuristicWeights.loadDefault(), threads, capacity);
+        int port = service.start(Integer.parseInt(args[0]));
+        System.out.println("Hints served on http://localhost:" + port + "/ with " + threads + " search threads");
+        while(true) {
+            TimeUnit.MINUTES.sleep(1);
+            service.evictIdle();
+            service.print();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Live counters and gauges of the running batch: games, moves and nodes per
+ * second, win rate, heap and GC time, and search latency percentiles. They are
+ * published through a JMX MBean and, when the system property "metrics.port" is
+ * set, as Prometheus text on http://localhost:port/metrics.
+ *
+ * The rates, the win rate and the latency percentiles cover the last minute,
+ * so a batch that slows down shows it instead of being averaged with its whole
+ * history. They are computed from snapshots of the counters and of the latency
+ * histogram taken at most once a second when they are read; if they are read
+ * less often than once a minute, they cover the time since the previous read.
+ * Prometheus gets the counters, its rate() gives the rates over any window, and
+ * the percentiles of the last minute. Moves are counted as they are played, so
+ * the move rate does not wait for the end of the games.
+ *
+ * Search latencies are kept in a histogram with 4 buckets per power of two of
+ * nanoseconds, so the percentiles are accurate to about 19%.
+ */
+public class Metrics implements MetricsMXBean {
+
+    /**
+     * The metrics of this JVM
+     */
+    public static final Metrics INSTANCE = new Metrics();
+
+    /**
+     * Buckets per power of two of the latency histogram
+     */
+    private static final int BUCKETS_PER_OCTAVE = 4;
+
+    /**
+     * Window of the rates in ns
+     */
+    private static final long WINDOW = 60_000_000_000L;
+
+    /**
+     * Least time between two snapshots of the counters in ns
+     */
+    private static final long SNAPSHOT_INTERVAL = 1_000_000_000L;
+
+    private static final int SNAPSHOTS = (int) (WINDOW/SNAPSHOT_INTERVAL)+1;
+
+    /**
+     * Index of the latency histogram in a snapshot
+     */
+    private static final int FIRST_BUCKET = 5;
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(64*BUCKETS_PER_OCTAVE);
+    private volatile long start = System.nanoTime();
+
+    //ring of snapshots: time, games, wins, moves, nodes and the latency histogram
+    private final long[][] snapshots = new long[SNAPSHOTS][];
+    private int newestSnapshot;
+    private int numOfSnapshots;
+
+    private boolean published=false;
+
+    private Metrics() {
+        clearSnapshots();
+    }
+
+    /**
+     * Records a finished search.
+     *
+     * @param nanos
+     * @param searchedNodes
+     */
+    public void recordSearch(long nanos, long searchedNodes) {
+        searches.increment();
+        nodes.add(searchedNodes);
+        latencies.incrementAndGet(bucket(nanos));
+    }
+
+    /**
+     * Records a played move.
+     */
+    public void recordMove() {
+        moves.increment();
+    }
+
+    /**
+     * Records a finished game.
+     *
+     * @param won
+     */
+    public void recordGame(boolean won) {
+        games.increment();
+        if(won) {
+            wins.increment();
+        }
+    }
+
+    private static int bucket(long nanos) {
+        if(nanos<=1) {
+            return 0;
+        }
+        double octaves = Math.log(nanos)/Math.log(2);
+        return (int) Math.min(Math.ceil(octaves*BUCKETS_PER_OCTAVE), 64*BUCKETS_PER_OCTAVE-1);
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the latency bucket that holds
+     * the percentile of the searches of the last minute.
+     *
+     * @param percentile
+     * @return
+     */
+    private double latencyPercentile(double percentile) {
+        double[] deltas = windowDeltas();
+        long total=0;
+        for(int k=FIRST_BUCKET;k<deltas.length;++k) {
+            total += (long) deltas[k];
+        }
+        if(total==0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile*total);
+        long seen=0;
+        for(int k=FIRST_BUCKET;k<deltas.length;++k) {
+            seen += (long) deltas[k];
+            if(seen>=rank) {
+                return Math.pow(2, (double) (k-FIRST_BUCKET)/BUCKETS_PER_OCTAVE)/1e6;
+            }
+        }
+        return 0;
+    }
+
+    private synchronized void clearSnapshots() {
+        snapshots[0] = new long[FIRST_BUCKET+latencies.length()];
+        snapshots[0][0] = start;
+        newestSnapshot = 0;
+        numOfSnapshots = 1;
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[FIRST_BUCKET+latencies.length()];
+        snapshot[0] = System.nanoTime();
+        snapshot[1] = getGames();
+        snapshot[2] = getWins();
+        snapshot[3] = getMoves();
+        snapshot[4] = getNodes();
+        for(int k=0;k<latencies.length();++k) {
+            snapshot[FIRST_BUCKET+k] = latencies.get(k);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the change of every counter since the oldest snapshot of the
+     * window, or since the newest snapshot when all of them are older, and
+     * takes a new snapshot if the newest one is old enough.
+     *
+     * @return seconds, games, wins, moves, nodes and the searches in every
+     * latency bucket from FIRST_BUCKET on
+     */
+    private synchronized double[] windowDeltas() {
+        long[] now = snapshot();
+        long[] base = snapshots[newestSnapshot];
+        for(int k=numOfSnapshots-1;k>=0;--k) {
+            long[] snapshot = snapshots[Math.floorMod(newestSnapshot-k, SNAPSHOTS)];
+            if(now[0]-snapshot[0]<=WINDOW) {
+                base = snapshot;
+                break;
+            }
+        }
+        double[] deltas = new double[now.length];
+        deltas[0] = Math.max((now[0]-base[0])/1e9, 1e-9);
+        for(int k=1;k<now.length;++k) {
+            deltas[k] = now[k]-base[k];
+        }
+
+        if(now[0]-snapshots[newestSnapshot][0]>=SNAPSHOT_INTERVAL) {
+            newestSnapshot = (newestSnapshot+1)%SNAPSHOTS;
+            snapshots[newestSnapshot] = now;
+            numOfSnapshots = Math.min(numOfSnapshots+1, SNAPSHOTS);
+        }
+        return deltas;
+    }
+
+    @Override
+    public long getGames() {
+        return games.sum();
+    }
+
+    @Override
+    public long getWins() {
+        return wins.sum();
+    }
+
+    @Override
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public double getGamesPerSecond() {
+        double[] deltas = windowDeltas();
+        return deltas[1]/deltas[0];
+    }
+
+    @Override
+    public double getMovesPerSecond() {
+        double[] deltas = windowDeltas();
+        return deltas[3]/deltas[0];
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+        double[] deltas = windowDeltas();
+        return deltas[4]/deltas[0];
+    }
+
+    @Override
+    public double getWinRate() {
+        double[] deltas = windowDeltas();
+        return (deltas[1]==0)?0:deltas[2]/deltas[1];
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public long getGcTimeMillis() {
+        long time=0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(collector.getCollectionTime(), 0);
+        }
+        return time;
+    }
+
+    @Override
+    public double getSearchLatencyP50Millis() {
+        return latencyPercentile(0.5);
+    }
+
+    @Override
+    public double getSearchLatencyP90Millis() {
+        return latencyPercentile(0.9);
+    }
+
+    @Override
+    public double getSearchLatencyP99Millis() {
+        return latencyPercentile(0.99);
+    }
+
+    @Override
+    public void reset() {
+        games.reset();
+        wins.reset();
+        moves.reset();
+        searches.reset();
+        nodes.reset();
+        for(int k=0;k<latencies.length();++k) {
+            latencies.set(k, 0);
+        }
+        start = System.nanoTime();
+        clearSnapshots();
+    }
+
+    /**
+     * Formats the metrics in the Prometheus text format.
+     *
+     * @return
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        append(text, "game2048_games_total", "counter", getGames());
+        append(text, "game2048_wins_total", "counter", getWins());
+        append(text, "game2048_moves_total", "counter", getMoves());
+        append(text, "game2048_searches_total", "counter", getSearches());
+        append(text, "game2048_nodes_total", "counter", getNodes());
+        append(text, "game2048_heap_used_bytes", "gauge", getHeapUsedBytes());
+        append(text, "game2048_gc_time_seconds_total", "counter", getGcTimeMillis()/1000.0);
+        text.append("# TYPE game2048_search_latency_seconds summary\n");
+        text.append("game2048_search_latency_seconds{quantile=\"0.5\"} ").append(getSearchLatencyP50Millis()/1000).append('\n');
+        text.append("game2048_search_latency_seconds{quantile=\"0.9\"} ").append(getSearchLatencyP90Millis()/1000).append('\n');
+        text.append("game2048_search_latency_seconds{quantile=\"0.99\"} ").append(getSearchLatencyP99Millis()/1000).append('\n');
+        return text.toString();
+    }
+
+    private static void append(StringBuilder text, String name, String type, double value) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Registers the MBean and, if "metrics.port" is set, starts the HTTP endpoint.
+     * Later calls do nothing.
+     */
+    public synchronized void publish() {
+        if(published) {
+            return;
+        }
+        published = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("GameTester:type=Metrics"));
+        }
+        catch(JMException e) {
+            System.out.println("Metrics MBean not registered: " + e);
+        }
+
+        Integer port = Integer.getInteger("metrics.port");
+        if(port!=null) {
+            try {
+                startHttp(port);
+            }
+            catch(IOException e) {
+                System.out.println("Metrics endpoint not started: " + e);
+            }
+        }
+    }
+
+    /**
+     * Serves the metrics on http://localhost:port/metrics.
+     *
+     * @param port
+     * @throws IOException
+     */
+    private void startHttp(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(null);
+        Thread starter = new Thread(server::start); //the dispatcher inherits the daemon flag of the thread that starts it
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Metrics served on http://localhost:" + server.getAddress().getPort() + "/metrics");
+    }
+}
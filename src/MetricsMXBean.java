@@ -0,0 +1,38 @@
+
+/**
+ * Live metrics of the batch runner and of the AI solver, published through JMX
+ * as "GameTester:type=Metrics". The counters cover the whole run, the rates,
+ * the win rate and the search latency percentiles the last minute.
+ */
+public interface MetricsMXBean {
+
+    long getGames();
+
+    long getWins();
+
+    long getMoves();
+
+    long getSearches();
+
+    long getNodes();
+
+    double getGamesPerSecond();
+
+    double getMovesPerSecond();
+
+    double getNodesPerSecond();
+
+    double getWinRate();
+
+    long getHeapUsedBytes();
+
+    long getGcTimeMillis();
+
+    double getSearchLatencyP50Millis();
+
+    double getSearchLatencyP90Millis();
+
+    double getSearchLatencyP99Millis();
+
+    void reset();
+}
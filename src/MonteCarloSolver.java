@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estimates the next move with pure Monte Carlo rollouts. Every legal direction
+ * is played and followed by random playouts until the game ends, and the
+ * direction with the best mean outcome is chosen. Playouts run on PackedBoard
+ * values, so they do not allocate, and are spread over a shared thread pool with
+ * one random generator per task.
+ */
+public class MonteCarloSolver implements Solver {
+
+    /**
+     * Playouts per direction used when no budget is given
+     */
+    public static final int DEFAULT_PLAYOUTS = 200;
+
+    /**
+     * The directions, Direction.values() copies its array on every call
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Number of worker threads
+     */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Seeds the random generators of the playout tasks
+     */
+    private static final AtomicLong SEEDS = new AtomicLong(System.nanoTime());
+
+    /**
+     * Shared daemon pool that runs the playouts
+     */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "montecarlo-playout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Playouts per direction, or 0 for no limit
+     */
+    private final int playouts;
+
+    /**
+     * Time budget per move in milliseconds, or 0 for no limit
+     */
+    private final long timeLimitMillis;
+
+    /**
+     * Constructor. When both limits are 0, DEFAULT_PLAYOUTS is used.
+     *
+     * @param playouts
+     * @param timeLimitMillis
+     */
+    public MonteCarloSolver(int playouts, long timeLimitMillis) {
+        this.playouts = Math.max(playouts, 0);
+        this.timeLimitMillis = Math.max(timeLimitMillis, 0);
+    }
+
+    @Override
+    public Direction findBestMove(Board theBoard) {
+        return findBestMove(theBoard, playouts, timeLimitMillis);
+    }
+
+    /**
+     * Method that finds the best next move. The search stops when every direction
+     * has been played out the given number of times or when the time limit is
+     * reached, whichever comes first.
+     *
+     * @param theBoard
+     * @param playouts playouts per direction, or 0 for no limit
+     * @param timeLimitMillis time budget, or 0 for no limit
+     * @return the best direction or null if no move is possible
+     */
+    public static Direction findBestMove(Board theBoard, int playouts, long timeLimitMillis) {
+        if(playouts<=0 && timeLimitMillis<=0) {
+            playouts=DEFAULT_PLAYOUTS;
+        }
+
+        long board = PackedBoard.pack(theBoard.getBoardArray());
+        int targetExponent = PackedBoard.toExponent(Board.targetPoints);
+        long deadline = (timeLimitMillis>0)?System.nanoTime()+timeLimitMillis*1000000L:Long.MAX_VALUE;
+
+        List<Future<long[]>> futures = new ArrayList<>();
+        for(int t=0;t<THREADS;++t) {
+            int quota = (playouts>0)?(playouts+t)/THREADS:Integer.MAX_VALUE; //split the playouts evenly
+            if(quota==0) {
+                continue;
+            }
+            futures.add(POOL.submit(new PlayoutTask(board, targetExponent, quota, deadline, SEEDS.incrementAndGet())));
+        }
+
+        long[] sums = new long[DIRECTIONS.length];
+        long[] counts = new long[DIRECTIONS.length];
+        for(Future<long[]> future : futures) {
+            long[] partial;
+            try {
+                partial = future.get();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch(ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            for(int d=0;d<sums.length;++d) {
+                sums[d]+=partial[d];
+                counts[d]+=partial[sums.length+d];
+            }
+        }
+
+        Direction bestDirection=null;
+        double bestMean=Double.NEGATIVE_INFINITY;
+        for(Direction direction : DIRECTIONS) {
+            int d=direction.getCode();
+            if(PackedBoard.move(board, direction)==board) {
+                continue; //invalid move
+            }
+            double mean=(counts[d]==0)?0:(double) sums[d]/counts[d];
+            if(bestDirection==null || mean>bestMean) {
+                bestMean=mean;
+                bestDirection=direction;
+            }
+        }
+        return bestDirection;
+    }
+
+    /**
+     * Runs playouts for every legal direction of one board. The result holds the
+     * sum of the outcomes per direction followed by the number of playouts per
+     * direction.
+     */
+    private static class PlayoutTask implements Callable<long[]> {
+
+        private final long board;
+        private final int targetExponent;
+        private final int quota;
+        private final long deadline;
+        private final Random randomGenerator;
+        private final int[] order = new int[DIRECTIONS.length]; //the shuffle starts from the order of the previous move
+
+        PlayoutTask(long board, int targetExponent, int quota, long deadline, long seed) {
+            this.board = board;
+            this.targetExponent = targetExponent;
+            this.quota = quota;
+            this.deadline = deadline;
+            this.randomGenerator = new Random(seed);
+            for(int d=0;d<order.length;++d) {
+                order[d] = d;
+            }
+        }
+
+        @Override
+        public long[] call() {
+            long[] result = new long[2*DIRECTIONS.length];
+            for(int n=0;n<quota && System.nanoTime()<deadline;++n) {
+                for(Direction direction : DIRECTIONS) {
+                    long newBoard = PackedBoard.move(board, direction);
+                    if(newBoard==board) {
+                        continue;
+                    }
+                    int points = PackedBoard.movePoints(board, direction);
+                    result[direction.getCode()] += playout(PackedBoard.addRandomCell(newBoard, randomGenerator), points);
+                    ++result[DIRECTIONS.length+direction.getCode()];
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Plays random moves until the game ends. Every move is drawn uniformly
+         * among the legal directions: the directions are tried in a random order,
+         * built one draw at a time, until one of them moves. The outcome is the
+         * score earned, plus the minimum win score when the target is reached.
+         *
+         * @param board
+         * @param score
+         * @return
+         */
+        private long playout(long board, int score) {
+            while(PackedBoard.maxExponent(board)<targetExponent) {
+                long newBoard = board;
+                for(int k=0;k<order.length && newBoard==board;++k) {
+                    int j = k+randomGenerator.nextInt(order.length-k); //partial Fisher-Yates shuffle
+                    int swap = order[k];
+                    order[k] = order[j];
+                    order[j] = swap;
+                    Direction direction = DIRECTIONS[order[k]];
+                    newBoard = PackedBoard.move(board, direction);
+                    if(newBoard!=board) {
+                        score += PackedBoard.movePoints(board, direction);
+                    }
+                }
+                if(newBoard==board) {
+                    return score; //no more moves
+                }
+                board = PackedBoard.addRandomCell(newBoard, randomGenerator);
+            }
+            return (long) score+Board.minimumWinScore;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opening book with the best moves of frequently reached early positions.
+ * Positions are canonicalized under the 8 symmetries of the board, so rotated
+ * and mirrored openings share one entry. The book is stored as sorted arrays
+ * and looked up with a binary search.
+ *
+ * A book is only valid for the search it was built with, so it records the
+ * depth, the target and the heuristic weights, and loadDefault() skips a book
+ * built for another search.
+ *
+ * The binary format is a magic number, the version, the depth, the target, the
+ * three weights (doubles) and the number of entries, followed by one record per
+ * position: the canonical packed board (long), the direction code (byte), the
+ * confidence in percent (byte) and the number of times the position was reached
+ * (int).
+ */
+public class OpeningBook {
+
+    /**
+     * Default file of the book
+     */
+    public static final String DEFAULT_FILE = "book";
+
+    /**
+     * Default minimum share of the searches that agreed on the move
+     */
+    public static final double DEFAULT_CONFIDENCE = 0.9;
+
+    /**
+     * Identifies book files
+     */
+    private static final int MAGIC = 0x32303438;
+
+    /**
+     * Version of the format
+     */
+    private static final int VERSION = 2;
+
+    private final int depth;
+    private final int targetPoints;
+    private final HeuristicWeights weights;
+    private final long[] boards;
+    private final byte[] directions;
+    private final byte[] confidences;
+    private final int[] counts;
+
+    private OpeningBook(int depth, int targetPoints, HeuristicWeights weights, long[] boards, byte[] directions, byte[] confidences, int[] counts) {
+        this.depth = depth;
+        this.targetPoints = targetPoints;
+        this.weights = weights;
+        this.boards = boards;
+        this.directions = directions;
+        this.confidences = confidences;
+        this.counts = counts;
+    }
+
+    /**
+     * Getter for the number of positions.
+     *
+     * @return
+     */
+    public int size() {
+        return boards.length;
+    }
+
+    /**
+     * Checks whether the book was built for a search.
+     *
+     * @param depth
+     * @param targetPoints
+     * @param weights
+     * @return
+     */
+    public boolean matches(int depth, int targetPoints, HeuristicWeights weights) {
+        return this.depth==depth && this.targetPoints==targetPoints && this.weights.equals(weights);
+    }
+
+    /**
+     * Describes the book for a configuration: the search it was built with, its
+     * size and a checksum of its entries, so a checkpoint is not resumed with
+     * another book.
+     *
+     * @return
+     */
+    public String getIdentity() {
+        long checksum = 0;
+        for(int k=0;k<boards.length;++k) {
+            checksum = 31*checksum + (boards[k] ^ (long) directions[k] << 8 ^ confidences[k]);
+        }
+        return "book:" + depth + ":" + targetPoints + ":" + weights + ":" + boards.length + ":" + Long.toHexString(checksum);
+    }
+
+    /**
+     * Returns the book move of a board, or null if the board is not in the book
+     * or its confidence is below the threshold.
+     *
+     * @param theBoard
+     * @param confidence minimum confidence between 0 and 1
+     * @return
+     */
+    public Direction lookup(Board theBoard, double confidence) {
+        long board = PackedBoard.pack(theBoard.getBoardArray());
+        int symmetry = PackedBoard.canonicalSymmetry(board);
+        int index = Arrays.binarySearch(boards, PackedBoard.applySymmetry(board, symmetry));
+        if(index<0 || confidences[index]<confidence*100) {
+            return null;
+        }
+        return PackedBoard.invertSymmetry(Direction.values()[directions[index]], symmetry);
+    }
+
+    /**
+     * Returns a solver that plays the book move when there is one and asks the
+     * fallback solver otherwise.
+     *
+     * @param fallback
+     * @param confidence
+     * @return
+     */
+    public Solver solver(Solver fallback, double confidence) {
+        return theBoard -> {
+            Direction direction = lookup(theBoard, confidence);
+            return (direction!=null)?direction:fallback.findBestMove(theBoard);
+        };
+    }
+
+    /**
+     * Saves the book.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(depth);
+            out.writeInt(targetPoints);
+            out.writeDouble(weights.getScore());
+            out.writeDouble(weights.getEmptyCells());
+            out.writeDouble(weights.getClustering());
+            out.writeInt(boards.length);
+            for(int k=0;k<boards.length;++k) {
+                out.writeLong(boards[k]);
+                out.writeByte(directions[k]);
+                out.writeByte(confidences[k]);
+                out.writeInt(counts[k]);
+            }
+        }
+    }
+
+    /**
+     * Loads a book.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static OpeningBook load(File file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt()!=MAGIC) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            int version = in.readInt();
+            if(version!=VERSION) {
+                throw new IOException("Unsupported opening book version " + version + " in " + file + ", build it again");
+            }
+            int depth = in.readInt();
+            int targetPoints = in.readInt();
+            HeuristicWeights weights = new HeuristicWeights(in.readDouble(), in.readDouble(), in.readDouble());
+            int size = in.readInt();
+            long[] boards = new long[size];
+            byte[] directions = new byte[size];
+            byte[] confidences = new byte[size];
+            int[] counts = new int[size];
+            for(int k=0;k<size;++k) {
+                boards[k] = in.readLong();
+                directions[k] = in.readByte();
+                confidences[k] = in.readByte();
+                counts[k] = in.readInt();
+            }
+            return new OpeningBook(depth, targetPoints, weights, boards, directions, confidences, counts);
+        }
+    }
+
+    /**
+     * Loads the default book if it exists and was built for the given search.
+     *
+     * @param depth
+     * @param targetPoints
+     * @param weights
+     * @return the book or null
+     */
+    public static OpeningBook loadDefault(int depth, int targetPoints, HeuristicWeights weights) {
+        File file = new File(DEFAULT_FILE);
+        if(!file.exists()) {
+            return null;
+        }
+        try {
+            OpeningBook book = load(file);
+            if(!book.matches(depth, targetPoints, weights)) {
+                System.out.println("Not using the opening book built for depth " + book.depth + ", max cell " + book.targetPoints + " and weights " + book.weights);
+                return null;
+            }
+            return book;
+        }
+        catch(IOException e) {
+            System.out.println(e);
+            return null;
+        }
+    }
+
+    /**
+     * Builds a book by playing games and recording the moves chosen by the AI
+     * solver during the first moves of every game.
+     *
+     * @param depth
+     * @param weights
+     * @param numOfGames
+     * @param openingMoves number of moves recorded per game
+     * @param minCount positions reached fewer times are left out
+     * @param targetPoints
+     * @return
+     * @throws CloneNotSupportedException
+     */
+    public static OpeningBook build(int depth, HeuristicWeights weights, int numOfGames, int openingMoves, int minCount, int targetPoints) throws CloneNotSupportedException {
+        Solver solver = theBoard -> AIsolver.findBestMove(theBoard, depth, weights);
+        Map<Long, int[]> votes = new HashMap<>();
+        for(int i=0;i<numOfGames;++i) {
+            Board theGame = new Board(targetPoints);
+            ActionStatus result=ActionStatus.CONTINUE;
+            for(int move=0;move<openingMoves && (result==ActionStatus.CONTINUE || result==ActionStatus.INVALID_MOVE);++move) {
+                Direction hint = solver.findBestMove(theGame);
+                if(hint==null) {
+                    break;
+                }
+                long board = PackedBoard.pack(theGame.getBoardArray());
+                int symmetry = PackedBoard.canonicalSymmetry(board);
+                int[] positionVotes = votes.computeIfAbsent(PackedBoard.applySymmetry(board, symmetry), key -> new int[Direction.values().length]);
+                ++positionVotes[PackedBoard.applySymmetry(hint, symmetry).getCode()];
+                result = theGame.action(hint);
+            }
+        }
+
+        long[] keys = votes.entrySet().stream().filter(entry -> Arrays.stream(entry.getValue()).sum()>=minCount)
+                .mapToLong(Map.Entry::getKey).sorted().toArray();
+        byte[] directions = new byte[keys.length];
+        byte[] confidences = new byte[keys.length];
+        int[] counts = new int[keys.length];
+        for(int k=0;k<keys.length;++k) {
+            int[] positionVotes = votes.get(keys[k]);
+            int best=0;
+            for(int d=1;d<positionVotes.length;++d) {
+                if(positionVotes[d]>positionVotes[best]) {
+                    best=d;
+                }
+            }
+            counts[k] = Arrays.stream(positionVotes).sum();
+            directions[k] = (byte) best;
+            confidences[k] = (byte) (100L*positionVotes[best]/counts[k]);
+        }
+        return new OpeningBook(depth, targetPoints, weights, keys, directions, confidences, counts);
+    }
+
+    /**
+     * Builds the default book with the AI solver at the current depth and with
+     * the current weights.
+     *
+     * @param numOfGames
+     * @param openingMoves
+     * @throws CloneNotSupportedException
+     * @throws IOException
+     */
+    public static void buildDefault(int numOfGames, int openingMoves) throws CloneNotSupportedException, IOException {
+        int hintDepth = DataModel.getDepth();
+        System.out.println("Playing "+numOfGames+" games to build the opening book:");
+        Stopwatch timer = new Stopwatch();
+        OpeningBook book = build(hintDepth, HeuristicWeights.loadDefault(), numOfGames, openingMoves, 2, DataModel.getMaxCell());
+        book.save(new File(DEFAULT_FILE));
+        System.out.println("Saved " + book.size() + " positions to '" + DEFAULT_FILE + "' in " + timer.elapsedTime() + " Seconds");
+    }
+
+    /**
+     * Builds a book from the command line: games, opening moves, minimum count
+     * and output file.
+     *
+     * @param args
+     * @throws CloneNotSupportedException
+     * @throws IOException
+     */
+    public static void main(String[] args) throws CloneNotSupportedException, IOException {
+        if(args.length<4) {
+            System.out.println("Usage: OpeningBook <games> <opening moves> <min count> <file>");
+            return;
+        }
+        int hintDepth = DataModel.getDepth();
+        OpeningBook book = build(hintDepth, HeuristicWeights.loadDefault(), Integer.parseInt(args[0]),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]), DataModel.getMaxCell());
+        book.save(new File(args[3]));
+        System.out.println("Saved " + book.size() + " positions to '" + args[3] + "'");
+    }
+}
@@ -0,0 +1,406 @@
+import java.util.Random;
+
+/**
+ * Allocation-free board representation packed in a single long. Each of the
+ * 16 cells holds the exponent of its tile in 4 bits (0 is an empty cell, 1 is
+ * a 2, 11 is a 2048). Cell (i,j) is stored at bit 4*(BOARD_SIZE*i+j), so the
+ * cell ids match the ones of Board.getEmptyCellIds().
+ */
+public final class PackedBoard {
+
+    /**
+     * The largest exponent that fits in a cell (32768)
+     */
+    public static final int MAX_EXPONENT = 15;
+
+    /**
+     * Row after a move to the left, indexed by the 16 bit row
+     */
+    private static final char[] ROW_LEFT = new char[1 << 16];
+
+    /**
+     * Row after a move to the right, indexed by the 16 bit row
+     */
+    private static final char[] ROW_RIGHT = new char[1 << 16];
+
+    /**
+     * Points earned by moving a row (same for both directions)
+     */
+    private static final int[] ROW_POINTS = new int[1 << 16];
+
+    /**
+     * Direction of a transposed board, indexed by the code of the direction
+     */
+    private static final Direction[] TRANSPOSED = {Direction.LEFT, Direction.DOWN, Direction.RIGHT, Direction.UP};
+
+    static {
+        int[] cells = new int[Board.BOARD_SIZE];
+        for(int row=0;row<(1 << 16);++row) {
+            for(int j=0;j<Board.BOARD_SIZE;++j) {
+                cells[j] = (row >>> (4*j)) & 0xF;
+            }
+            ROW_POINTS[row] = slideLeft(cells);
+            ROW_LEFT[row] = (char) encodeRow(cells);
+
+            for(int j=0;j<Board.BOARD_SIZE;++j) {
+                cells[Board.BOARD_SIZE-j-1] = (row >>> (4*j)) & 0xF;
+            }
+            slideLeft(cells);
+            int right=0;
+            for(int j=0;j<Board.BOARD_SIZE;++j) {
+                right |= cells[Board.BOARD_SIZE-j-1] << (4*j);
+            }
+            ROW_RIGHT[row] = (char) right;
+        }
+    }
+
+    private PackedBoard() {
+    }
+
+    /**
+     * Slides a row of exponents to the left using the same merging rules as
+     * Board.move() and returns the points earned.
+     *
+     * @param cells
+     * @return
+     */
+    private static int slideLeft(int[] cells) {
+        int points=0;
+        int target=0;
+        boolean merged=false;
+        for(int j=0;j<cells.length;++j) {
+            int value=cells[j];
+            if(value==0) {
+                continue;
+            }
+            cells[j]=0;
+            if(target>0 && !merged && cells[target-1]==value && value<MAX_EXPONENT) {
+                cells[target-1]=value+1;
+                points+=1 << (value+1);
+                merged=true; //a tile can only merge once per move
+            }
+            else {
+                cells[target++]=value;
+                merged=false;
+            }
+        }
+        return points;
+    }
+
+    private static int encodeRow(int[] cells) {
+        int row=0;
+        for(int j=0;j<cells.length;++j) {
+            row |= cells[j] << (4*j);
+        }
+        return row;
+    }
+
+    /**
+     * Packs a board array. Tiles larger than 2^MAX_EXPONENT are capped.
+     *
+     * @param boardArray
+     * @return
+     */
+    public static long pack(int[][] boardArray) {
+        long board=0;
+        for(int i=0;i<Board.BOARD_SIZE;++i) {
+            for(int j=0;j<Board.BOARD_SIZE;++j) {
+                board = setCell(board, Board.BOARD_SIZE*i+j, toExponent(boardArray[i][j]));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Unpacks a board into a new board array.
+     *
+     * @param board
+     * @return
+     */
+    public static int[][] unpack(long board) {
+        int[][] boardArray = new int[Board.BOARD_SIZE][Board.BOARD_SIZE];
+        for(int i=0;i<Board.BOARD_SIZE;++i) {
+            for(int j=0;j<Board.BOARD_SIZE;++j) {
+                int exponent=getCell(board, Board.BOARD_SIZE*i+j);
+                boardArray[i][j] = (exponent==0)?0:1 << exponent;
+            }
+        }
+        return boardArray;
+    }
+
+    /**
+     * Converts a tile value to its exponent.
+     *
+     * @param value
+     * @return
+     */
+    public static int toExponent(int value) {
+        if(value<=0) {
+            return 0;
+        }
+        return Math.min(31-Integer.numberOfLeadingZeros(value), MAX_EXPONENT);
+    }
+
+    /**
+     * Getter for the exponent of a cell.
+     *
+     * @param board
+     * @param cellId
+     * @return
+     */
+    public static int getCell(long board, int cellId) {
+        return (int) (board >>> (4*cellId)) & 0xF;
+    }
+
+    /**
+     * Returns a copy of the board with the exponent of a cell replaced.
+     *
+     * @param board
+     * @param cellId
+     * @param exponent
+     * @return
+     */
+    public static long setCell(long board, int cellId, int exponent) {
+        int shift=4*cellId;
+        return (board & ~(0xFL << shift)) | ((long) exponent << shift);
+    }
+
+    /**
+     * Transposes the board along its main diagonal.
+     *
+     * @param board
+     * @return
+     */
+    public static long transpose(long board) {
+        long a1 = board & 0xF0F00F0FF0F00F0FL;
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    /**
+     * Mirrors the board left to right.
+     *
+     * @param board
+     * @return
+     */
+    public static long flipHorizontal(long board) {
+        return ((board & 0x000F000F000F000FL) << 12) | ((board & 0x00F000F000F000F0L) << 4)
+             | ((board & 0x0F000F000F000F00L) >>> 4) | ((board & 0xF000F000F000F000L) >>> 12);
+    }
+
+    /**
+     * Mirrors the board top to bottom.
+     *
+     * @param board
+     * @return
+     */
+    public static long flipVertical(long board) {
+        return ((board & 0xFFFFL) << 48) | ((board & 0xFFFF0000L) << 16)
+             | ((board >>> 16) & 0xFFFF0000L) | (board >>> 48);
+    }
+
+    /**
+     * Applies one of the 8 symmetries of the square. Bit 0 of the symmetry
+     * transposes, then bit 1 mirrors left to right and bit 2 mirrors top to
+     * bottom.
+     *
+     * @param board
+     * @param symmetry
+     * @return
+     */
+    public static long applySymmetry(long board, int symmetry) {
+        if((symmetry & 1)!=0) {
+            board = transpose(board);
+        }
+        if((symmetry & 2)!=0) {
+            board = flipHorizontal(board);
+        }
+        if((symmetry & 4)!=0) {
+            board = flipVertical(board);
+        }
+        return board;
+    }
+
+    /**
+     * Maps a direction through a symmetry, so that moving the transformed board
+     * in the returned direction gives the transformed result of the original move.
+     *
+     * @param direction
+     * @param symmetry
+     * @return
+     */
+    public static Direction applySymmetry(Direction direction, int symmetry) {
+        if((symmetry & 1)!=0) {
+            direction = TRANSPOSED[direction.getCode()];
+        }
+        if((symmetry & 2)!=0) {
+            direction = (direction==Direction.LEFT)?Direction.RIGHT:(direction==Direction.RIGHT)?Direction.LEFT:direction;
+        }
+        if((symmetry & 4)!=0) {
+            direction = (direction==Direction.UP)?Direction.DOWN:(direction==Direction.DOWN)?Direction.UP:direction;
+        }
+        return direction;
+    }
+
+    /**
+     * Maps a direction of a transformed board back to the original board.
+     *
+     * @param direction
+     * @param symmetry
+     * @return
+     */
+    public static Direction invertSymmetry(Direction direction, int symmetry) {
+        if((symmetry & 4)!=0) {
+            direction = applySymmetry(direction, 4);
+        }
+        if((symmetry & 2)!=0) {
+            direction = applySymmetry(direction, 2);
+        }
+        if((symmetry & 1)!=0) {
+            direction = applySymmetry(direction, 1);
+        }
+        return direction;
+    }
+
+    /**
+     * Returns the symmetry that maps the board to its canonical form, the
+     * smallest of its 8 symmetric boards.
+     *
+     * @param board
+     * @return
+     */
+    public static int canonicalSymmetry(long board) {
+        int best=0;
+        long bestBoard=board;
+        for(int symmetry=1;symmetry<8;++symmetry) {
+            long candidate=applySymmetry(board, symmetry);
+            if(Long.compareUnsigned(candidate, bestBoard)<0) {
+                bestBoard=candidate;
+                best=symmetry;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Performs one move and returns the new board.
+     *
+     * @param board
+     * @param direction
+     * @return
+     */
+    public static long move(long board, Direction direction) {
+        switch(direction) {
+            case LEFT:  return moveRows(board, ROW_LEFT);
+            case RIGHT: return moveRows(board, ROW_RIGHT);
+            case UP:    return transpose(moveRows(transpose(board), ROW_LEFT));
+            default:    return transpose(moveRows(transpose(board), ROW_RIGHT));
+        }
+    }
+
+    /**
+     * Returns the points earned by performing a move.
+     *
+     * @param board
+     * @param direction
+     * @return
+     */
+    public static int movePoints(long board, Direction direction) {
+        if(direction==Direction.UP || direction==Direction.DOWN) {
+            board = transpose(board);
+        }
+        return ROW_POINTS[(int) board & 0xFFFF]
+             + ROW_POINTS[(int) (board >>> 16) & 0xFFFF]
+             + ROW_POINTS[(int) (board >>> 32) & 0xFFFF]
+             + ROW_POINTS[(int) (board >>> 48) & 0xFFFF];
+    }
+
+    private static long moveRows(long board, char[] table) {
+        return (long) table[(int) board & 0xFFFF]
+             | (long) table[(int) (board >>> 16) & 0xFFFF] << 16
+             | (long) table[(int) (board >>> 32) & 0xFFFF] << 32
+             | (long) table[(int) (board >>> 48) & 0xFFFF] << 48;
+    }
+
+    /**
+     * Counts the number of empty cells.
+     *
+     * @param board
+     * @return
+     */
+    public static int countEmpty(long board) {
+        long occupied = board | (board >>> 1);
+        occupied |= occupied >>> 2;
+        occupied &= 0x1111111111111111L;
+        return Board.BOARD_SIZE*Board.BOARD_SIZE - Long.bitCount(occupied);
+    }
+
+    /**
+     * Returns the largest exponent on the board.
+     *
+     * @param board
+     * @return
+     */
+    public static int maxExponent(long board) {
+        int max=0;
+        for(int cellId=0;cellId<Board.BOARD_SIZE*Board.BOARD_SIZE;++cellId) {
+            max = Math.max(max, getCell(board, cellId));
+        }
+        return max;
+    }
+
+    /**
+     * Checks whether no move changes the board.
+     *
+     * @param board
+     * @return
+     */
+    public static boolean isTerminated(long board) {
+        if(countEmpty(board)>0) {
+            return false;
+        }
+        long transposed=transpose(board);
+        return moveRows(board, ROW_LEFT)==board && moveRows(board, ROW_RIGHT)==board
+            && moveRows(transposed, ROW_LEFT)==transposed && moveRows(transposed, ROW_RIGHT)==transposed;
+    }
+
+    /**
+     * Places a 2 (90%) or a 4 (10%) on a random empty cell. The board is returned
+     * unchanged if it is full.
+     *
+     * @param board
+     * @param randomGenerator
+     * @return
+     */
+    public static long addRandomCell(long board, Random randomGenerator) {
+        int empty=countEmpty(board);
+        if(empty==0) {
+            return board;
+        }
+        int pick=randomGenerator.nextInt(empty);
+        int exponent=(randomGenerator.nextDouble()<0.9)?1:2;
+        return setNthEmptyCell(board, pick, exponent);
+    }
+
+    /**
+     * Sets the exponent of the n-th empty cell (counted by cell id).
+     *
+     * @param board
+     * @param n
+     * @param exponent
+     * @return
+     */
+    public static long setNthEmptyCell(long board, int n, int exponent) {
+        for(int cellId=0;cellId<Board.BOARD_SIZE*Board.BOARD_SIZE;++cellId) {
+            if(getCell(board, cellId)==0 && n--==0) {
+                return setCell(board, cellId, exponent);
+            }
+        }
+        return board;
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates datasets of labeled positions: games are played on several threads,
+ * positions are sampled from them and labeled with the value and the best
+ * direction of an AIsolver search.
+ *
+ * The file starts with a header (magic number, version, record size, label
+ * depth, target, reserved) followed by fixed-width records, all big endian:
+ * the packed board (8 bytes, see PackedBoard), the search value (4), the score
+ * of the game (4), the move number (4), the ordinal of the best direction or -1
+ * (1) and padding (3). PositionReader reads them in place.
+ *
+ * Every thread fills its own direct buffer and writes it at a region of the file
+ * it reserves with an atomic counter, so the threads never wait for each other.
+ */
+public class PositionDataset implements Closeable {
+
+    /**
+     * Default dataset file
+     */
+    public static final String DEFAULT_FILE = "positions";
+
+    /**
+     * Identifies dataset files ("2048" followed by 'P')
+     */
+    public static final int MAGIC = 0x32303450;
+
+    /**
+     * Version of the record format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size in bytes of the header
+     */
+    public static final int HEADER_SIZE = 24;
+
+    /**
+     * Size in bytes of a record
+     */
+    public static final int RECORD_SIZE = 24;
+
+    /**
+     * Records buffered by each thread before each write
+     */
+    private static final int BUFFERED_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final AtomicLong end = new AtomicLong(HEADER_SIZE);
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFERED_RECORDS*RECORD_SIZE));
+
+    /**
+     * Creates a dataset file, replacing an existing one.
+     *
+     * @param file
+     * @param depth depth of the labeling search
+     * @param targetPoints
+     * @throws IOException
+     */
+    public PositionDataset(File file, int depth, int targetPoints) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(depth).putInt(targetPoints).putInt(0).flip();
+        while(header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Adds a position to the buffer of the current thread.
+     *
+     * @param board packed board
+     * @param value value of the search
+     * @param score score of the game
+     * @param move move number
+     * @param direction best direction or null
+     * @throws IOException
+     */
+    public void write(long board, int value, int score, int move, Direction direction) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        if(buffer.remaining()<RECORD_SIZE) {
+            flush();
+        }
+        buffer.putLong(board).putInt(value).putInt(score).putInt(move).put((byte) ((direction==null)?-1:direction.ordinal()));
+        buffer.put((byte) 0).putShort((short) 0);
+    }
+
+    /**
+     * Writes the buffer of the current thread to a region of the file reserved
+     * for it.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        ByteBuffer buffer = buffers.get();
+        buffer.flip();
+        long position = end.getAndAdd(buffer.remaining());
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Getter for the number of records written to the file so far.
+     *
+     * @return
+     */
+    public long size() {
+        return (end.get()-HEADER_SIZE)/RECORD_SIZE;
+    }
+
+    /**
+     * Closes the file. Every thread that wrote records must have flushed them.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Plays games on several threads and writes their sampled positions. A game
+     * is played with a search of playDepth, and every sampled position is labeled
+     * with a search of labelDepth, so a cheap play depth gives more positions per
+     * CPU second.
+     *
+     * @param file
+     * @param games
+     * @param playDepth
+     * @param labelDepth
+     * @param sampleRate share of the positions written, from 0 to 1
+     * @param targetPoints
+     * @param threads
+     * @param seed seed of the first game, the following games use the next seeds
+     * @return the number of positions written
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws CloneNotSupportedException
+     */
+    public static long generate(File file, int games, int playDepth, int labelDepth, double sampleRate, int targetPoints, int threads, long seed)
+            throws IOException, InterruptedException, CloneNotSupportedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextGame = new AtomicInteger();
+        Stopwatch timer = new Stopwatch();
+        try(PositionDataset dataset = new PositionDataset(file, labelDepth, targetPoints)) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for(int t=0;t<threads;++t) {
+                futures.add(pool.submit(() -> {
+                    int game;
+                    while((game = nextGame.getAndIncrement())<games) {
+                        dataset.play(seed+game, playDepth, labelDepth, sampleRate, targetPoints);
+                    }
+                    dataset.flush();
+                    return null;
+                }));
+            }
+            for(Future<Void> future : futures) {
+                try {
+                    future.get();
+                }
+                catch(ExecutionException e) {
+                    if(e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    if(e.getCause() instanceof CloneNotSupportedException) {
+                        throw (CloneNotSupportedException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+
+            double seconds = timer.elapsedTime();
+            System.out.println(dataset.size() + " positions from " + games + " games in " + Math.round(seconds*100.0)/100.0 + " Seconds ("
+                    + Math.round(dataset.size()/Math.max(seconds, 1e-9)) + " positions/sec) written to " + file);
+            return dataset.size();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game on the current thread and writes its sampled positions.
+     */
+    private void play(long seed, int playDepth, int labelDepth, double sampleRate, int targetPoints) throws IOException, CloneNotSupportedException {
+        Board theGame = new Board(targetPoints, seed);
+        Random sampler = new Random(~seed);
+        ActionStatus result = ActionStatus.CONTINUE;
+        while(result==ActionStatus.CONTINUE || result==ActionStatus.INVALID_MOVE) {
+            Direction hint = null;
+            if(sampler.nextDouble()<sampleRate) {
+                Direction label = AIsolver.findBestMove(theGame, labelDepth);
+                Integer value = AIsolver.getLastScore(theGame);
+                write(PackedBoard.pack(theGame.getBoardArray()), (value==null)?0:value, theGame.getScore(), theGame.getMoves(), label);
+                if(playDepth==labelDepth) {
+                    hint = label;
+                }
+            }
+            if(hint==null) {
+                hint = AIsolver.findBestMove(theGame, playDepth);
+            }
+            result = theGame.action(hint);
+        }
+    }
+
+    /**
+     * Generates a dataset from the command line: games, play depth, label depth,
+     * sample rate and optionally the file and the seed. The max cell is read from
+     * the data file.
+     *
+     * @param args
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws CloneNotSupportedException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, CloneNotSupportedException {
+        if(args.length<4) {
+            System.out.println("Usage: PositionDataset <games> <play depth> <label depth> <sample rate> [file] [seed]");
+            return;
+        }
+        File file = new File((args.length>4)?args[4]:DEFAULT_FILE);
+        long seed = (args.length>5)?Long.parseLong(args[5]):System.currentTimeMillis();
+        generate(file, Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Double.parseDouble(args[3]),
+                DataModel.getMaxCell(), Runtime.getRuntime().availableProcessors(), seed);
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a dataset written by PositionDataset in place: the file is memory-mapped
+ * and every field of a record is read at its offset, so iterating over millions
+ * of positions creates no objects. Files larger than 2 GB are mapped in several
+ * parts that each hold whole records.
+ */
+public class PositionReader implements Closeable {
+
+    /**
+     * Records per mapped part
+     */
+    private static final long RECORDS_PER_PART = (1L << 30)/PositionDataset.RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] parts;
+    private final long size;
+    private final int depth;
+    private final int targetPoints;
+
+    /**
+     * Opens a dataset file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public PositionReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), PositionDataset.HEADER_SIZE));
+        if(header.remaining()<PositionDataset.HEADER_SIZE || header.getInt()!=PositionDataset.MAGIC) {
+            channel.close();
+            throw new IOException("Not a position dataset: " + file);
+        }
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if(version!=PositionDataset.VERSION || recordSize!=PositionDataset.RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Unsupported dataset version " + version + " in " + file);
+        }
+        depth = header.getInt();
+        targetPoints = header.getInt();
+
+        size = (channel.size()-PositionDataset.HEADER_SIZE)/PositionDataset.RECORD_SIZE;
+        parts = new MappedByteBuffer[(int) ((size+RECORDS_PER_PART-1)/RECORDS_PER_PART)];
+        for(int p=0;p<parts.length;++p) {
+            long records = Math.min(RECORDS_PER_PART, size-p*RECORDS_PER_PART);
+            parts[p] = channel.map(FileChannel.MapMode.READ_ONLY, PositionDataset.HEADER_SIZE+p*RECORDS_PER_PART*PositionDataset.RECORD_SIZE,
+                    records*PositionDataset.RECORD_SIZE);
+        }
+    }
+
+    /**
+     * Getter for the number of positions.
+     *
+     * @return
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Getter for the depth of the labeling search.
+     *
+     * @return
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Getter for the target of the games.
+     *
+     * @return
+     */
+    public int getTargetPoints() {
+        return targetPoints;
+    }
+
+    private MappedByteBuffer part(long index) {
+        return parts[(int) (index/RECORDS_PER_PART)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index%RECORDS_PER_PART)*PositionDataset.RECORD_SIZE;
+    }
+
+    /**
+     * Getter for the packed board of a position.
+     *
+     * @param index
+     * @return
+     */
+    public long getBoard(long index) {
+        return part(index).getLong(offset(index));
+    }
+
+    /**
+     * Getter for the search value of a position.
+     *
+     * @param index
+     * @return
+     */
+    public int getValue(long index) {
+        return part(index).getInt(offset(index)+8);
+    }
+
+    /**
+     * Getter for the score of the game at a position.
+     *
+     * @param index
+     * @return
+     */
+    public int getScore(long index) {
+        return part(index).getInt(offset(index)+12);
+    }
+
+    /**
+     * Getter for the move number of a position.
+     *
+     * @param index
+     * @return
+     */
+    public int getMove(long index) {
+        return part(index).getInt(offset(index)+16);
+    }
+
+    /**
+     * Getter for the best direction of a position.
+     *
+     * @param index
+     * @return the direction or null
+     */
+    public Direction getDirection(long index) {
+        byte code = part(index).get(offset(index)+20);
+        return (code<0)?null:Direction.values()[code];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Prints the size of the datasets given as arguments, or of the default one,
+     * with the distribution of their best directions and max cells. The average
+     * value leaves out the positions the search found won (Integer.MAX_VALUE) or
+     * lost (AIsolver.LOSS_SCORE), which are counted separately.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length==0) {
+            args = new String[] {PositionDataset.DEFAULT_FILE};
+        }
+        for(String name : args) {
+            try(PositionReader reader = new PositionReader(new File(name))) {
+                long[] directions = new long[Direction.values().length+1];
+                long[] maxCells = new long[PackedBoard.MAX_EXPONENT+1];
+                long totalValue=0, won=0, lost=0;
+                for(long k=0;k<reader.size();++k) {
+                    Direction direction = reader.getDirection(k);
+                    ++directions[(direction==null)?directions.length-1:direction.ordinal()];
+                    ++maxCells[PackedBoard.maxExponent(reader.getBoard(k))];
+                    int value = reader.getValue(k);
+                    if(value==Integer.MAX_VALUE) {
+                        ++won;
+                    }
+                    else if(value==AIsolver.LOSS_SCORE) {
+                        ++lost;
+                    }
+                    else {
+                        totalValue += value;
+                    }
+                }
+
+                System.out.println(name + ": " + reader.size() + " positions labeled at depth " + reader.getDepth() + " for a target of " + reader.getTargetPoints());
+                if(reader.size()==0) {
+                    continue;
+                }
+                long scored = reader.size()-won-lost;
+                System.out.println("avg value " + ((scored==0)?0:Math.round(totalValue*100.0/scored)/100.0) + " of " + scored
+                        + " positions, " + won + " won and " + lost + " lost by the search");
+                StringBuilder line = new StringBuilder("best directions:");
+                for(Direction direction : Direction.values()) {
+                    line.append(' ').append(direction).append(' ').append(directions[direction.ordinal()]);
+                }
+                System.out.println(line.append(", none ").append(directions[directions.length-1]));
+                System.out.println("max cell distribution:");
+                for(int exponent=0;exponent<maxCells.length;++exponent) {
+                    if(maxCells[exponent]>0) {
+                        System.out.println("  " + (1 << exponent) + ": " + maxCells[exponent]);
+                    }
+                }
+                System.out.println();
+            }
+        }
+    }
+}
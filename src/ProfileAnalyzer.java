@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Attributes the search time of a Flight Recorder recording to game phases (the
+ * max cell on the board) and to board densities (the number of empty cells),
+ * using the events emitted through Profiling.
+ */
+public class ProfileAnalyzer {
+
+    /**
+     * Searches, time and nodes of one group of search events
+     */
+    private static class Totals {
+        private long searches;
+        private long nanos;
+        private long nodes;
+
+        void add(RecordedEvent event) {
+            ++searches;
+            nanos += event.getDuration().toNanos();
+            nodes += event.getLong("nodes");
+        }
+    }
+
+    /**
+     * Prints the time per phase and per density of a recording.
+     *
+     * @param recording
+     * @throws IOException
+     */
+    public static void analyze(Path recording) throws IOException {
+        Map<Integer, Totals> phases = new TreeMap<>();
+        Map<Integer, Totals> densities = new TreeMap<>();
+        Totals all = new Totals();
+        long games=0, wins=0, actions=0;
+
+        try(RecordingFile file = new RecordingFile(recording)) {
+            while(file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                switch(event.getEventType().getName()) {
+                    case "game2048.Search":
+                        all.add(event);
+                        phases.computeIfAbsent(event.getInt("maxCell"), key -> new Totals()).add(event);
+                        densities.computeIfAbsent(event.getInt("emptyCells"), key -> new Totals()).add(event);
+                        break;
+                    case "game2048.Game":
+                        ++games;
+                        wins += event.getBoolean("won")?1:0;
+                        break;
+                    case "game2048.Action":
+                        ++actions;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        System.out.println(recording + ": " + games + " games, " + wins + " wins, " + actions + " moves, " + all.searches + " searches");
+        print("max cell", phases, all);
+        print("empty cells", densities, all);
+    }
+
+    private static void print(String title, Map<Integer, Totals> groups, Totals all) {
+        System.out.println();
+        System.out.println(String.format("%12s %10s %10s %8s %12s %12s", title, "searches", "time (ms)", "share", "avg (ms)", "avg nodes"));
+        for(Map.Entry<Integer, Totals> entry : groups.entrySet()) {
+            Totals totals = entry.getValue();
+            System.out.println(String.format("%12d %10d %10.1f %7.1f%% %12.3f %12.0f", entry.getKey(), totals.searches, totals.nanos/1e6,
+                    100.0*totals.nanos/Math.max(all.nanos, 1), totals.nanos/1e6/totals.searches, (double) totals.nodes/totals.searches));
+        }
+    }
+
+    /**
+     * Analyzes the recordings given as arguments.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length==0) {
+            System.out.println("Usage: ProfileAnalyzer <recording.jfr>...");
+            return;
+        }
+        for(String name : args) {
+            analyze(Paths.get(name));
+        }
+    }
+}
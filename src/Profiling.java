@@ -0,0 +1,142 @@
+
+/**
+ * Emits the Flight Recorder events of the game. The events are created through
+ * this class only, so the rest of the code does not depend on jdk.jfr and still
+ * runs on JVMs without Flight Recorder. Events are only filled in when a
+ * recording has them enabled, which keeps them cheap enough to leave on.
+ *
+ * Record a run with the bundled settings:
+ *   java -XX:StartFlightRecording=settings=game2048.jfc,filename=run.jfr ConsoleGame
+ * and analyze it with:
+ *   java ProfileAnalyzer run.jfr
+ */
+public final class Profiling {
+
+    /**
+     * Whether the running JVM has Flight Recorder
+     */
+    private static final boolean AVAILABLE = isAvailable();
+
+    private Profiling() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        }
+        catch(ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts the event of a search.
+     *
+     * @return the event to pass to endSearch(), or null
+     */
+    public static Object beginSearch() {
+        if(!AVAILABLE) {
+            return null;
+        }
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event of a search.
+     *
+     * @param handle
+     * @param theBoard
+     * @param depth
+     * @param nodes
+     * @param direction
+     */
+    public static void endSearch(Object handle, Board theBoard, int depth, long nodes, Direction direction) {
+        if(handle==null) {
+            return;
+        }
+        SearchEvent event = (SearchEvent) handle;
+        event.end();
+        if(event.shouldCommit()) {
+            event.depth = depth;
+            event.nodes = nodes;
+            event.direction = (direction==null)?null:direction.getDescription();
+            event.emptyCells = theBoard.getNumberOfEmptyCells();
+            event.maxCell = theBoard.getMaxCell();
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts the event of a move.
+     *
+     * @return the event to pass to endAction(), or null
+     */
+    public static Object beginAction() {
+        if(!AVAILABLE) {
+            return null;
+        }
+        ActionEvent event = new ActionEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event of a move.
+     *
+     * @param handle
+     * @param status
+     * @param points
+     */
+    public static void endAction(Object handle, ActionStatus status, int points) {
+        if(handle==null) {
+            return;
+        }
+        ActionEvent event = (ActionEvent) handle;
+        event.end();
+        if(event.shouldCommit()) {
+            event.status = status.name();
+            event.points = points;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts the event of a game.
+     *
+     * @return the event to pass to endGame(), or null
+     */
+    public static Object beginGame() {
+        if(!AVAILABLE) {
+            return null;
+        }
+        GameEvent event = new GameEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event of a game.
+     *
+     * @param handle
+     * @param result
+     */
+    public static void endGame(Object handle, GameResult result) {
+        if(handle==null) {
+            return;
+        }
+        GameEvent event = (GameEvent) handle;
+        event.end();
+        if(event.shouldCommit()) {
+            event.seed = result.getSeed();
+            event.won = result.hasWon();
+            event.score = result.getScore();
+            event.maxCell = result.getMaxCell();
+            event.moves = result.getMoves();
+            event.nodes = result.getNodes();
+            event.commit();
+        }
+    }
+}
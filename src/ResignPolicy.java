@@ -0,0 +1,485 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Resigns games that are very unlikely to be won, to save the compute of their
+ * last moves. The win probability is a cheap logistic estimate from the average
+ * and the trend of empty cells, the max cell compared to Board.targetPoints and
+ * whether the last search found a forced loss (AIsolver.LOSS_SCORE).
+ *
+ * The coefficients are fitted offline by fit(): games are played to the end,
+ * their positions are labeled with the outcome, a logistic regression is fitted
+ * on them and checked on separate held-out games. They are only saved when the
+ * held-out games that would have resigned were won at most at the threshold
+ * rate. During a run the coefficients never change, so the same position always
+ * gets the same decision.
+ *
+ * Resigning turns some would-be wins into losses, so the policy audits a sample
+ * of the games: in those it only notes where it would have resigned and lets the
+ * game finish. The share of audited resignations that went on to win gives the
+ * estimated bias of the success rate. As soon as that share exceeds the
+ * threshold, the model is not calibrated for this batch and resignation is
+ * disabled for the rest of it.
+ */
+public class ResignPolicy {
+
+    /**
+     * Default win probability below which a game is resigned
+     */
+    public static final double DEFAULT_THRESHOLD = 0.02;
+
+    /**
+     * Default file of the fitted coefficients
+     */
+    public static final String DEFAULT_FILE = "resign";
+
+    /**
+     * Games are never resigned before this move
+     */
+    public static final int MIN_MOVES = 50;
+
+    /**
+     * Smoothing factor of the empty cell averages
+     */
+    private static final double SMOOTHING = 0.1;
+
+    /**
+     * Coefficients of the bias, the empty cells, the progress towards the target,
+     * the empty cell trend and the forced loss used until fitted ones are saved.
+     * Hand-set, not fitted.
+     */
+    private static final double[] PRIOR = {-4, 0.9, 4, 2, -3};
+
+    /**
+     * Ridge penalty of the regression, keeps the coefficient of a feature that
+     * separates the outcomes perfectly (a forced loss is never won) finite
+     */
+    private static final double RIDGE = 1;
+
+    private final double[] coefficients;
+    private final double threshold;
+    private final int auditEvery;
+    private boolean fitted=true;
+
+    private double emptyCells;
+    private double emptyTrend;
+    private int triggerMove;
+    private final List<double[]> positions = new ArrayList<>(); //features of the positions of the current game
+
+    private int resigned=0;
+    private int audited=0;
+    private int auditTriggered=0;
+    private int auditTriggeredWon=0;
+    private long auditMovesAfterTrigger=0;
+
+    /**
+     * Constructor
+     *
+     * @param coefficients
+     * @param threshold win probability below which a game is resigned
+     * @param auditEvery one game in auditEvery is played to the end to measure
+     * the bias
+     */
+    public ResignPolicy(double[] coefficients, double threshold, int auditEvery) {
+        this.coefficients = coefficients.clone();
+        this.threshold = threshold;
+        this.auditEvery = Math.max(auditEvery, 1);
+    }
+
+    /**
+     * Creates a policy with the coefficients of the default file. If nothing has
+     * been fitted, the policy only audits the hand-set coefficients and never
+     * resigns.
+     *
+     * @param threshold
+     * @param auditEvery
+     * @return
+     * @throws FileNotFoundException
+     */
+    public static ResignPolicy loadDefault(double threshold, int auditEvery) throws FileNotFoundException {
+        File file = new File(DEFAULT_FILE);
+        if(!file.exists()) {
+            System.out.println("No fitted resign coefficients in '" + DEFAULT_FILE + "', resignation is disabled and only audited");
+            ResignPolicy policy = new ResignPolicy(PRIOR, threshold, auditEvery);
+            policy.fitted = false;
+            return policy;
+        }
+        try(Scanner in = new Scanner(file)) {
+            String[] temp = in.nextLine().trim().split(",");
+            double[] coefficients = new double[PRIOR.length];
+            for(int k=0;k<coefficients.length;++k) {
+                coefficients[k] = Double.parseDouble(temp[k]);
+            }
+            return new ResignPolicy(coefficients, threshold, auditEvery);
+        }
+    }
+
+    /**
+     * Prepares the policy for a new game.
+     */
+    public void reset() {
+        emptyCells = Board.BOARD_SIZE*Board.BOARD_SIZE;
+        emptyTrend = 0;
+        triggerMove = -1;
+        positions.clear();
+    }
+
+    /**
+     * Checks whether a game is an audit game.
+     *
+     * @param game index of the game in the batch
+     * @return
+     */
+    public boolean isAudit(int game) {
+        return game%auditEvery==0;
+    }
+
+    /**
+     * Checks whether games may be resigned: the coefficients were fitted and the
+     * audits have not shown more of the games that would resign to be won than
+     * the threshold.
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return fitted && auditTriggeredWon<=threshold*auditTriggered;
+    }
+
+    /**
+     * Estimates the probability that the game is won.
+     *
+     * @param theBoard
+     * @param searchScore score of the last search of the board, or null
+     * @return
+     */
+    public double winProbability(Board theBoard, Integer searchScore) {
+        return probability(coefficients, features(theBoard, searchScore));
+    }
+
+    private double[] features(Board theBoard, Integer searchScore) {
+        double progress = Math.log(Math.max(theBoard.getMaxCell(), 2))/Math.log(Board.targetPoints);
+        double forcedLoss = (searchScore!=null && searchScore==AIsolver.LOSS_SCORE)?1:0; //every line loses against the worst spawns
+        return new double[] {1, emptyCells, progress, emptyTrend, forcedLoss};
+    }
+
+    private static double probability(double[] coefficients, double[] features) {
+        double logit=0;
+        for(int k=0;k<features.length;++k) {
+            logit += coefficients[k]*features[k];
+        }
+        return 1/(1+Math.exp(-logit));
+    }
+
+    /**
+     * Updates the estimate after a search and checks whether the game should be
+     * resigned. Only the first trigger of a game counts.
+     *
+     * @param theBoard
+     * @param searchScore score of the last search of the board, or null
+     * @return true the first time the win probability falls below the threshold
+     */
+    public boolean update(Board theBoard, Integer searchScore) {
+        double empty = theBoard.getNumberOfEmptyCells();
+        emptyTrend += SMOOTHING*((empty-emptyCells)-emptyTrend);
+        emptyCells += SMOOTHING*(empty-emptyCells);
+        if(theBoard.getMoves()<MIN_MOVES) {
+            return false;
+        }
+        double[] features = features(theBoard, searchScore);
+        positions.add(features);
+        if(triggerMove>=0) {
+            return false;
+        }
+        if(probability(coefficients, features)<threshold) {
+            triggerMove = theBoard.getMoves();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a finished game.
+     *
+     * @param result
+     * @param audit
+     */
+    public void record(GameResult result, boolean audit) {
+        if(result.hasResigned()) {
+            ++resigned;
+        }
+        if(audit) {
+            ++audited;
+            if(triggerMove>=0) {
+                ++auditTriggered;
+                auditTriggeredWon += result.hasWon()?1:0;
+                auditMovesAfterTrigger += result.getMoves()-triggerMove;
+            }
+        }
+    }
+
+    /**
+     * Prints the resignations, the estimated bias of the success rate and the
+     * estimated moves saved.
+     *
+     * @param games
+     */
+    public void print(int games) {
+        double falseResignRate = (auditTriggered==0)?0:(double) auditTriggeredWon/auditTriggered;
+        double bias = (games==0)?0:falseResignRate*resigned/games;
+        double movesSaved = (auditTriggered==0)?0:(double) auditMovesAfterTrigger/auditTriggered*resigned;
+        System.out.println("resigned " + resigned + " games below a win probability of " + threshold + " with the coefficients " + coefficientsToString(coefficients));
+        System.out.println("audit: " + auditTriggered + " of " + audited + " audited games would have resigned, " + auditTriggeredWon + " of them were won");
+        if(!fitted) {
+            System.out.println("resignation disabled: no fitted coefficients, run ResignPolicy to fit them");
+        }
+        else if(!isEnabled()) {
+            System.out.println("resignation disabled: the audited games that would have resigned were won more often than " + threshold);
+        }
+        System.out.println("estimated success rate bias: -" + Math.round(bias*10000.0)/100.0 + "%, estimated moves saved: " + Math.round(movesSaved));
+        System.out.println();
+    }
+
+    /**
+     * Writes the counters for a checkpoint.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(resigned);
+        out.writeInt(audited);
+        out.writeInt(auditTriggered);
+        out.writeInt(auditTriggeredWon);
+        out.writeLong(auditMovesAfterTrigger);
+    }
+
+    /**
+     * Restores the counters written by write().
+     *
+     * @param in
+     * @throws IOException
+     */
+    public void read(DataInput in) throws IOException {
+        int resigned = in.readInt();
+        int audited = in.readInt();
+        int auditTriggered = in.readInt();
+        int auditTriggeredWon = in.readInt();
+        long auditMovesAfterTrigger = in.readLong();
+        //assigned only once the whole state was read, a truncated checkpoint leaves the policy as it was
+        this.resigned = resigned;
+        this.audited = audited;
+        this.auditTriggered = auditTriggered;
+        this.auditTriggeredWon = auditTriggeredWon;
+        this.auditMovesAfterTrigger = auditMovesAfterTrigger;
+    }
+
+    /**
+     * Getter for the threshold.
+     *
+     * @return
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Describes the policy for a configuration, so a checkpoint is not resumed
+     * with other coefficients.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return threshold + ":" + (fitted?coefficientsToString(coefficients):"unfitted");
+    }
+
+    private static String coefficientsToString(double[] coefficients) {
+        StringBuilder text = new StringBuilder();
+        for(int k=0;k<coefficients.length;++k) {
+            text.append((k==0)?"":",").append(coefficients[k]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Plays games to the end from consecutive seeds and collects the features of
+     * their positions, one list per game.
+     *
+     * @param solver
+     * @param games
+     * @param targetPoints
+     * @param seed seed of the first game
+     * @param won receives the outcome of every game
+     * @return
+     * @throws CloneNotSupportedException
+     */
+    private static List<List<double[]>> collect(Solver solver, int games, int targetPoints, long seed, boolean[] won) throws CloneNotSupportedException {
+        ResignPolicy collector = new ResignPolicy(PRIOR, 0, 1); //a threshold of 0 never triggers
+        List<List<double[]>> positions = new ArrayList<>();
+        for(int i=0;i<games;++i) {
+            Board theGame = new Board(targetPoints, seed+i);
+            won[i] = ConsoleGame.playGame(theGame, solver, collector, true)==ActionStatus.WIN;
+            positions.add(new ArrayList<>(collector.positions));
+        }
+        return positions;
+    }
+
+    /**
+     * Fits the coefficients by a logistic regression (Newton's method with a
+     * ridge penalty) of the outcome of the games on the features of their
+     * positions.
+     */
+    private static double[] regress(List<List<double[]>> positions, boolean[] won) {
+        int n = PRIOR.length;
+        double[] coefficients = new double[n];
+        for(int iteration=0;iteration<50;++iteration) {
+            double[] gradient = new double[n];
+            double[][] hessian = new double[n][n];
+            for(int k=1;k<n;++k) {
+                gradient[k] = -RIDGE*coefficients[k];
+                hessian[k][k] = RIDGE;
+            }
+            for(int g=0;g<positions.size();++g) {
+                double label = won[g]?1:0;
+                for(double[] features : positions.get(g)) {
+                    double p = probability(coefficients, features);
+                    for(int i=0;i<n;++i) {
+                        gradient[i] += (label-p)*features[i];
+                        for(int j=0;j<n;++j) {
+                            hessian[i][j] += p*(1-p)*features[i]*features[j];
+                        }
+                    }
+                }
+            }
+            double[] step = solve(hessian, gradient);
+            double change=0;
+            for(int k=0;k<n;++k) {
+                coefficients[k] += step[k];
+                change = Math.max(change, Math.abs(step[k]));
+            }
+            if(change<1e-6) {
+                break;
+            }
+        }
+        return coefficients;
+    }
+
+    /**
+     * Solves a symmetric positive definite system by Gaussian elimination.
+     */
+    private static double[] solve(double[][] matrix, double[] vector) {
+        int n = vector.length;
+        double[][] a = new double[n][];
+        double[] b = vector.clone();
+        for(int i=0;i<n;++i) {
+            a[i] = matrix[i].clone();
+        }
+        for(int i=0;i<n;++i) {
+            double pivot = (a[i][i]==0)?1e-12:a[i][i];
+            for(int r=i+1;r<n;++r) {
+                double factor = a[r][i]/pivot;
+                for(int c=i;c<n;++c) {
+                    a[r][c] -= factor*a[i][c];
+                }
+                b[r] -= factor*b[i];
+            }
+        }
+        double[] x = new double[n];
+        for(int i=n-1;i>=0;--i) {
+            double sum = b[i];
+            for(int c=i+1;c<n;++c) {
+                sum -= a[i][c]*x[c];
+            }
+            x[i] = sum/((a[i][i]==0)?1e-12:a[i][i]);
+        }
+        return x;
+    }
+
+    /**
+     * Fits the coefficients on training games and validates them on held-out
+     * games played from the following seeds. The coefficients are saved to the
+     * file only if the held-out games that would have resigned were won at most
+     * at the threshold rate.
+     *
+     * @param solver
+     * @param trainGames
+     * @param heldOutGames
+     * @param targetPoints
+     * @param seed seed of the first training game
+     * @param threshold
+     * @param file
+     * @return true if the coefficients were saved
+     * @throws CloneNotSupportedException
+     * @throws FileNotFoundException
+     */
+    public static boolean fit(Solver solver, int trainGames, int heldOutGames, int targetPoints, long seed, double threshold, File file)
+            throws CloneNotSupportedException, FileNotFoundException {
+        System.out.println("Playing " + trainGames + " training games and " + heldOutGames + " held-out games:");
+        Stopwatch timer = new Stopwatch();
+        boolean[] trainWon = new boolean[trainGames];
+        List<List<double[]>> train = collect(solver, trainGames, targetPoints, seed, trainWon);
+        boolean[] heldOutWon = new boolean[heldOutGames];
+        List<List<double[]>> heldOut = collect(solver, heldOutGames, targetPoints, seed+trainGames, heldOutWon);
+        double[] coefficients = regress(train, trainWon);
+
+        int triggered=0, triggeredWon=0, wins=0;
+        for(int g=0;g<heldOutGames;++g) {
+            wins += heldOutWon[g]?1:0;
+            for(double[] features : heldOut.get(g)) {
+                if(probability(coefficients, features)<threshold) {
+                    ++triggered;
+                    triggeredWon += heldOutWon[g]?1:0;
+                    break;
+                }
+            }
+        }
+        System.out.println("coefficients " + coefficientsToString(coefficients) + " fitted in " + timer.elapsedTime() + " Seconds");
+        System.out.println("held-out: " + wins + " of " + heldOutGames + " games won, " + triggered + " would have resigned below "
+                + threshold + ", " + triggeredWon + " of them were won");
+
+        if(triggered==0) {
+            System.out.println("Not saved: no held-out game would have resigned");
+            return false;
+        }
+        if(triggeredWon>threshold*triggered) {
+            System.out.println("Not saved: the coefficients are not calibrated at this threshold");
+            return false;
+        }
+        try(PrintWriter out = new PrintWriter(file)) {
+            out.println(coefficientsToString(coefficients));
+            out.println("fitted on " + trainGames + " games at depth " + DataModel.getDepth() + " for a target of " + targetPoints
+                    + ", held-out: " + triggeredWon + " of " + triggered + " resigned games won");
+        }
+        System.out.println("Saved to '" + file + "'");
+        return true;
+    }
+
+    /**
+     * Fits the coefficients from the command line: training games, held-out
+     * games and optionally the threshold and the seed. Depth, max cell and
+     * weights are the ones of the AI solver.
+     *
+     * @param args
+     * @throws CloneNotSupportedException
+     * @throws FileNotFoundException
+     */
+    public static void main(String[] args) throws CloneNotSupportedException, FileNotFoundException {
+        if(args.length<2) {
+            System.out.println("Usage: ResignPolicy <training games> <held-out games> [threshold] [seed]");
+            return;
+        }
+        double threshold = (args.length>2)?Double.parseDouble(args[2]):DEFAULT_THRESHOLD;
+        long seed = (args.length>3)?Long.parseLong(args[3]):System.currentTimeMillis();
+        int hintDepth = DataModel.getDepth();
+        HeuristicWeights weights = HeuristicWeights.loadDefault();
+        fit(theBoard -> AIsolver.findBestMove(theBoard, hintDepth, weights), Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                DataModel.getMaxCell(), seed, threshold, new File(DEFAULT_FILE));
+    }
+}
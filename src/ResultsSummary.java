@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Summarizes a results file written by ResultsWriter. The file is memory-mapped
+ * and scanned once; the per-game values needed for percentiles are collected
+ * into primitive arrays on the way.
+ */
+public class ResultsSummary {
+
+    /**
+     * Percentiles printed for every distribution
+     */
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 1.0};
+
+    /**
+     * Prints the aggregates and percentiles of a results file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static void summarize(File file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.remaining()<ResultsWriter.HEADER_SIZE || buffer.getInt()!=ResultsWriter.MAGIC) {
+                throw new IOException("Not a results file: " + file);
+            }
+            int version = buffer.getInt();
+            int recordSize = buffer.getInt();
+            buffer.getInt();
+            if(version!=ResultsWriter.VERSION || recordSize!=GameResult.RECORD_SIZE) {
+                throw new IOException("Unsupported results version " + version + " in " + file);
+            }
+
+            int games = buffer.remaining()/recordSize;
+            long[] nanos = new long[games];
+            int[] scores = new int[games];
+            int[] moves = new int[games];
+            long[] nodes = new long[games];
+            int[] maxCells = new int[PackedBoard.MAX_EXPONENT+2];
+            int wins=0, resigned=0;
+            long totalScore=0, totalMoves=0, totalNanos=0, totalNodes=0;
+
+            for(int k=0;k<games;++k) {
+                GameResult result = GameResult.read(buffer);
+                wins += result.hasWon()?1:0;
+                resigned += result.hasResigned()?1:0;
+                totalScore += scores[k] = result.getScore();
+                totalMoves += moves[k] = result.getMoves();
+                totalNanos += nanos[k] = result.getNanos();
+                totalNodes += nodes[k] = result.getNodes();
+                ++maxCells[Math.min(PackedBoard.toExponent(result.getMaxCell()), maxCells.length-1)];
+            }
+
+            System.out.println(file + ": " + games + " games");
+            if(games==0) {
+                return;
+            }
+            System.out.println(wins+" wins, " + resigned + " resigned, success rate of: " + round(100.0*wins/games) + "%");
+            System.out.println("avg score " + round(totalScore/(double) games) + ", avg moves " + round(totalMoves/(double) games)
+                    + ", avg time " + round(totalNanos/1e9/games) + " Seconds");
+            System.out.println("nodes/sec " + round(totalNodes/Math.max(totalNanos/1e9, 1e-9)) + ", moves/sec " + round(totalMoves/Math.max(totalNanos/1e9, 1e-9)));
+
+            Arrays.sort(nanos);
+            Arrays.sort(scores);
+            Arrays.sort(moves);
+            Arrays.sort(nodes);
+            for(double percentile : PERCENTILES) {
+                int index = Math.min((int) Math.ceil(percentile*games)-1, games-1);
+                System.out.println(((percentile<1)?"p" + Math.round(percentile*100):"max") + ": time " + round(nanos[index]/1e9) + " Seconds, score " + scores[index]
+                        + ", moves " + moves[index] + ", nodes " + nodes[index]);
+            }
+
+            System.out.println("max cell distribution:");
+            for(int exponent=0;exponent<maxCells.length;++exponent) {
+                if(maxCells[exponent]>0) {
+                    System.out.println("  " + (1 << exponent) + ": " + maxCells[exponent] + " (" + round(100.0*maxCells[exponent]/games) + "%)");
+                }
+            }
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value*100.0)/100.0;
+    }
+
+    /**
+     * Summarizes the results files given as arguments, or the default one.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length==0) {
+            args = new String[] {ResultsWriter.DEFAULT_FILE};
+        }
+        for(String name : args) {
+            summarize(new File(name));
+            System.out.println();
+        }
+    }
+}
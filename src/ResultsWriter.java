@@ -0,0 +1,125 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams game results to a binary file as games finish. The file starts with
+ * a header (magic number, version, record size, reserved) followed by one
+ * GameResult record per game, all big endian. Records are collected in a direct
+ * buffer and written to the file channel whenever the buffer fills up.
+ */
+public class ResultsWriter implements Closeable {
+
+    /**
+     * Default results file
+     */
+    public static final String DEFAULT_FILE = "results";
+
+    /**
+     * Identifies results files
+     */
+    public static final int MAGIC = 0x32303452;
+
+    /**
+     * Version of the record format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size in bytes of the header
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Records buffered before each write
+     */
+    private static final int BUFFERED_RECORDS = 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS*GameResult.RECORD_SIZE);
+
+    /**
+     * Opens a results file. A new file gets a header.
+     *
+     * @param file
+     * @param append keep the records of an existing file
+     * @throws IOException
+     */
+    public ResultsWriter(File file, boolean append) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if(!append || channel.size()<HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(GameResult.RECORD_SIZE).putInt(0).flip();
+            channel.truncate(0);
+            while(header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        //drop a partial record left by a killed run
+        long records = (channel.size()-HEADER_SIZE)/GameResult.RECORD_SIZE;
+        channel.truncate(HEADER_SIZE+records*GameResult.RECORD_SIZE);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Adds the result of a game.
+     *
+     * @param result
+     * @throws IOException
+     */
+    public void write(GameResult result) throws IOException {
+        if(buffer.remaining()<GameResult.RECORD_SIZE) {
+            flush();
+        }
+        result.write(buffer);
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the buffered records and forces them to the storage device.
+     *
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    /**
+     * Keeps only the first records of the file, dropping the ones written after
+     * them.
+     *
+     * @param records
+     * @throws IOException
+     */
+    public void truncate(long records) throws IOException {
+        flush();
+        channel.truncate(HEADER_SIZE+records*GameResult.RECORD_SIZE);
+        channel.position(channel.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
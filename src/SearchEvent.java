@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one AIsolver.findBestMove() search.
+ */
+@Name("game2048.Search")
+@Label("Search")
+@Category("2048")
+@Description("A best move search of the AI solver")
+@StackTrace(false)
+public class SearchEvent extends jdk.jfr.Event {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Direction")
+    String direction;
+
+    @Label("Empty Cells")
+    int emptyCells;
+
+    @Label("Max Cell")
+    int maxCell;
+}
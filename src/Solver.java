@@ -0,0 +1,15 @@
+
+/**
+ * A strategy that estimates the next move of a board.
+ */
+public interface Solver {
+
+    /**
+     * Method that finds the best next move.
+     *
+     * @param theBoard
+     * @return
+     * @throws CloneNotSupportedException
+     */
+    Direction findBestMove(Board theBoard) throws CloneNotSupportedException;
+}
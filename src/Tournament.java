@@ -0,0 +1,193 @@
+import java.io.FileNotFoundException;
+
+/**
+ * Compares two solver configurations with paired games. Both configurations
+ * play a game from the same seed, and a sequential probability ratio test on
+ * the pairs that only one of them won stops the tournament as soon as one
+ * configuration is significantly better (or significantly not better).
+ *
+ * The seed fixes the starting board and the random sequence, not the tiles of
+ * the whole game: a new tile goes to an empty cell picked from that sequence, so
+ * once the two configurations play a different move their boards and the
+ * following spawns diverge. The pairing removes the luck of the opening, not of
+ * the rest of the game.
+ *
+ * Two one-sided tests run at once, "A better" and "B better", each at ALPHA/2,
+ * so equal configurations are declared different with a probability of at most
+ * ALPHA.
+ *
+ * Configurations are written as "ab:depth[:score,empty,clustering]" for the
+ * alpha-beta AI solver, optionally with HeuristicWeights (the tuned weights of
+ * HeuristicWeights.loadDefault() otherwise), and "mc:playouts[:milliseconds]"
+ * for the Monte Carlo solver.
+ */
+public class Tournament {
+
+    /**
+     * Probability of declaring a winner when both configurations are equal,
+     * split between the two one-sided tests
+     */
+    public static final double ALPHA = 0.05;
+
+    /**
+     * Probability of missing a better configuration
+     */
+    public static final double BETA = 0.05;
+
+    /**
+     * Share of the split pairs won by the better configuration that the test
+     * must detect
+     */
+    public static final double P1 = 0.6;
+
+    /**
+     * z value of the reported 95% confidence intervals
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * Builds a solver from its configuration.
+     *
+     * @param config
+     * @return
+     * @throws FileNotFoundException
+     */
+    public static Solver parseSolver(String config) throws FileNotFoundException {
+        String[] parts = config.trim().split(":");
+        switch(parts[0]) {
+            case "ab":
+                int depth = Integer.parseInt(parts[1]);
+                HeuristicWeights weights = (parts.length>2)?HeuristicWeights.parse(parts[2]):HeuristicWeights.loadDefault();
+                return theBoard -> AIsolver.findBestMove(theBoard, depth, weights);
+            case "mc":
+                return new MonteCarloSolver(Integer.parseInt(parts[1]), (parts.length>2)?Long.parseLong(parts[2]):0);
+            default:
+                throw new IllegalArgumentException("Unknown solver configuration: " + config);
+        }
+    }
+
+    /**
+     * Plays paired games until the test decides or the maximum number of pairs is
+     * reached, and prints the result.
+     *
+     * @param configA
+     * @param configB
+     * @param maxPairs
+     * @param targetPoints
+     * @param seed seed of the first pair, the following pairs use the next seeds
+     * @throws CloneNotSupportedException
+     * @throws FileNotFoundException
+     */
+    public static void run(String configA, String configB, int maxPairs, int targetPoints, long seed) throws CloneNotSupportedException, FileNotFoundException {
+        Solver solverA = parseSolver(configA);
+        Solver solverB = parseSolver(configB);
+
+        double upper = Math.log((1-BETA)/(ALPHA/2));
+        double lower = Math.log(BETA/(1-ALPHA/2));
+        double winStep = Math.log(P1/0.5);
+        double lossStep = Math.log((1-P1)/0.5);
+
+        int winsA=0, winsB=0, onlyA=0, onlyB=0, pairs=0;
+        double scoreDiffSum=0, scoreDiffSquares=0;
+        String decision = "no decision after the maximum number of pairs";
+        System.out.println("Playing up to "+maxPairs+" paired games: A = "+configA+", B = "+configB);
+
+        Stopwatch timer = new Stopwatch();
+        while(pairs<maxPairs) {
+            Board gameA = new Board(targetPoints, seed+pairs);
+            Board gameB = new Board(targetPoints, seed+pairs);
+            boolean wonA = ConsoleGame.playGame(gameA, solverA)==ActionStatus.WIN;
+            boolean wonB = ConsoleGame.playGame(gameB, solverB)==ActionStatus.WIN;
+            ++pairs;
+
+            winsA += wonA?1:0;
+            winsB += wonB?1:0;
+            onlyA += (wonA && !wonB)?1:0;
+            onlyB += (wonB && !wonA)?1:0;
+            double scoreDiff = gameA.getScore()-gameB.getScore();
+            scoreDiffSum += scoreDiff;
+            scoreDiffSquares += scoreDiff*scoreDiff;
+
+            //log likelihood ratios of "A better" and "B better" against "equal"
+            double llrA = onlyA*winStep + onlyB*lossStep;
+            double llrB = onlyB*winStep + onlyA*lossStep;
+            if(llrA>=upper) {
+                decision = "A is better";
+                break;
+            }
+            if(llrB>=upper) {
+                decision = "B is better";
+                break;
+            }
+            if(llrA<=lower && llrB<=lower) {
+                decision = "no significant difference";
+                break;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Decision after " + pairs + " pairs in " + timer.elapsedTime() + " Seconds: " + decision);
+        System.out.println("A: " + winsA + " wins, success rate " + interval(winsA/(double) pairs, wilsonLow(winsA, pairs), wilsonHigh(winsA, pairs)));
+        System.out.println("B: " + winsB + " wins, success rate " + interval(winsB/(double) pairs, wilsonLow(winsB, pairs), wilsonHigh(winsB, pairs)));
+        System.out.println("pairs won only by A: " + onlyA + ", only by B: " + onlyB);
+
+        double winDiff = (onlyA-onlyB)/(double) pairs;
+        double winDiffDeviation = Math.sqrt(Math.max((onlyA+onlyB)/(double) pairs-winDiff*winDiff, 0)/pairs);
+        System.out.println("success rate difference A-B: " + interval(winDiff, winDiff-Z*winDiffDeviation, winDiff+Z*winDiffDeviation));
+
+        double meanScoreDiff = scoreDiffSum/pairs;
+        double scoreDiffDeviation = (pairs>1)?Math.sqrt(Math.max(scoreDiffSquares-pairs*meanScoreDiff*meanScoreDiff, 0)/(pairs-1)/pairs):0;
+        System.out.println("score difference A-B: " + round(meanScoreDiff) + " (95% CI " + round(meanScoreDiff-Z*scoreDiffDeviation) + " to " + round(meanScoreDiff+Z*scoreDiffDeviation) + ")");
+        System.out.println();
+    }
+
+    private static double wilsonLow(int wins, int games) {
+        return wilson(wins, games, -1);
+    }
+
+    private static double wilsonHigh(int wins, int games) {
+        return wilson(wins, games, 1);
+    }
+
+    /**
+     * Bound of the Wilson score interval of a success rate.
+     *
+     * @param wins
+     * @param games
+     * @param sign -1 for the lower bound and 1 for the upper bound
+     * @return
+     */
+    private static double wilson(int wins, int games, int sign) {
+        double p = wins/(double) games;
+        double denominator = 1+Z*Z/games;
+        double center = p+Z*Z/(2*games);
+        double margin = Z*Math.sqrt(p*(1-p)/games+Z*Z/(4.0*games*games));
+        return (center+sign*margin)/denominator;
+    }
+
+    private static String interval(double estimate, double low, double high) {
+        return round(estimate*100) + "% (95% CI " + round(low*100) + "% to " + round(high*100) + "%)";
+    }
+
+    private static double round(double value) {
+        return Math.round(value*100.0)/100.0;
+    }
+
+    /**
+     * Runs a tournament from the command line: configuration A, configuration B
+     * and optionally the maximum number of pairs and the first seed.
+     *
+     * @param args
+     * @throws CloneNotSupportedException
+     * @throws FileNotFoundException
+     */
+    public static void main(String[] args) throws CloneNotSupportedException, FileNotFoundException {
+        if(args.length<2) {
+            System.out.println("Usage: Tournament <config A> <config B> [max pairs] [seed]");
+            return;
+        }
+        int maxPairs = (args.length>2)?Integer.parseInt(args[2]):DataModel.getNumOfGames();
+        long seed = (args.length>3)?Long.parseLong(args[3]):System.currentTimeMillis();
+        run(args[0], args[1], maxPairs, DataModel.getMaxCell(), seed);
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap cache of search results for AIsolver, shared by all search threads
+ * and, when it is backed by a memory-mapped file, by all processes that map the
+ * same file. The entries live in direct or mapped buffers, so the garbage
+ * collector never scans them, and the table can be several GB large by using
+ * one buffer per GB.
+ *
+ * Entries are two longs, key^data and data, written without locks (the lockless
+ * XOR scheme of Hyatt and Mann). A reader only accepts an entry when the XOR of
+ * both words gives back its key, so an entry torn by a concurrent write of
+ * another thread or process reads as a miss instead of as a wrong result.
+ *
+ * Buckets hold two entries: a new result replaces the entry of the same key, or
+ * else the one searched to the smaller depth.
+ *
+ * The data word holds the score (32 bits), the depth (8 bits), the bound (2 bits)
+ * and the best direction (3 bits).
+ *
+ * The header of a table file holds the magic number, the version, the size and
+ * the identity of the stored results (see AIsolver.tableIdentity()), so a file
+ * written with other weights, another target or other score rules is rejected
+ * instead of returning scores on another scale.
+ */
+public class TranspositionTable {
+
+    /**
+     * The score is exact
+     */
+    public static final int EXACT = 1;
+
+    /**
+     * The score is a lower bound (the search failed high)
+     */
+    public static final int LOWER = 2;
+
+    /**
+     * The score is an upper bound (the search failed low)
+     */
+    public static final int UPPER = 3;
+
+    /**
+     * Magic number of table files ("2048" followed by 'T')
+     */
+    private static final int MAGIC = 0x32303454;
+
+    private static final int VERSION = 2;
+
+    /**
+     * Bytes reserved for the header of table files
+     */
+    private static final int HEADER_SIZE = 64;
+
+    private static final int ENTRY_SIZE = 16;
+    private static final int BUCKET_SIZE = 2*ENTRY_SIZE;
+
+    /**
+     * Bytes per buffer, a buffer is indexed by an int
+     */
+    private static final int SEGMENT_BITS = 30;
+
+    private final ByteBuffer[] segments;
+    private final long bucketMask;
+    private final int bucketsPerSegmentBits;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    private TranspositionTable(ByteBuffer[] segments, long buckets) {
+        this.segments = segments;
+        this.bucketMask = buckets-1;
+        this.bucketsPerSegmentBits = SEGMENT_BITS-Long.numberOfTrailingZeros(BUCKET_SIZE);
+    }
+
+    /**
+     * Rounds a size in bytes down to a power of two of at least one bucket.
+     *
+     * @param bytes
+     * @return
+     */
+    private static long tableSize(long bytes) {
+        return Math.max(Long.highestOneBit(bytes), BUCKET_SIZE);
+    }
+
+    /**
+     * Creates a table in direct memory of the current process.
+     *
+     * @param bytes size of the table, rounded down to a power of two
+     * @return
+     */
+    public static TranspositionTable allocate(long bytes) {
+        long size = tableSize(bytes);
+        int count = (int) Math.max(size >>> SEGMENT_BITS, 1);
+        ByteBuffer[] segments = new ByteBuffer[count];
+        for(int s=0;s<count;++s) {
+            segments[s] = ByteBuffer.allocateDirect((int) Math.min(size, 1L << SEGMENT_BITS)).order(ByteOrder.nativeOrder());
+        }
+        return new TranspositionTable(segments, size/BUCKET_SIZE);
+    }
+
+    /**
+     * Opens a table backed by a file, creating it if needed. Processes that open
+     * the same file share the table. An existing file keeps its size.
+     *
+     * @param file
+     * @param bytes size of a new table, rounded down to a power of two
+     * @param identity identity of the results, an existing file must have the same
+     * @return
+     * @throws IOException if the file has another version or identity
+     */
+    public static TranspositionTable open(File file, long bytes, long identity) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            long size;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if(header.getInt(0)==MAGIC) {
+                if(header.getInt(4)!=VERSION) {
+                    throw new IOException(file + ": unsupported table version " + header.getInt(4));
+                }
+                if(header.getLong(16)!=identity) {
+                    throw new IOException(file + ": table of other heuristic weights, target or score rules");
+                }
+                size = header.getLong(8);
+            }
+            else {
+                size = tableSize(bytes);
+                raf.setLength(HEADER_SIZE+size);
+                header.putLong(16, identity);
+                header.putLong(8, size);
+                header.putInt(4, VERSION);
+                header.putInt(0, MAGIC);
+                header.force();
+            }
+
+            int count = (int) Math.max(size >>> SEGMENT_BITS, 1);
+            ByteBuffer[] segments = new ByteBuffer[count];
+            for(int s=0;s<count;++s) {
+                long length = Math.min(size, 1L << SEGMENT_BITS);
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE+s*length, length).order(ByteOrder.nativeOrder());
+            }
+            return new TranspositionTable(segments, size/BUCKET_SIZE); //the mappings stay valid after the channel is closed
+        }
+    }
+
+    /**
+     * Creates the table configured with -Dtt.size (MB) and optionally -Dtt.file.
+     * A file is identified by the tuned heuristic weights and the max cell of the
+     * data file.
+     *
+     * @return the table or null when no size is configured
+     * @throws IOException
+     */
+    public static TranspositionTable fromProperties() throws IOException {
+        Long megabytes = Long.getLong("tt.size");
+        if(megabytes==null) {
+            return null;
+        }
+        String file = System.getProperty("tt.file");
+        if(file==null) {
+            return allocate(megabytes << 20);
+        }
+        return open(new File(file), megabytes << 20, AIsolver.tableIdentity(HeuristicWeights.loadDefault(), DataModel.getMaxCell()));
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key hash of the position, see AIsolver
+     * @return the data word or 0 when the position is not in the table
+     */
+    public long probe(long key) {
+        probes.increment();
+        long bucket = key & bucketMask;
+        ByteBuffer segment = segments[(int) (bucket >>> bucketsPerSegmentBits)];
+        int offset = (int) (bucket & ((1L << bucketsPerSegmentBits)-1))*BUCKET_SIZE;
+        for(int e=0;e<2;++e) {
+            int position = offset+e*ENTRY_SIZE;
+            long data = segment.getLong(position+8);
+            if(data!=0 && (segment.getLong(position)^data)==key) {
+                hits.increment();
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result.
+     *
+     * @param key hash of the position
+     * @param score
+     * @param depth remaining depth of the search, at least 1
+     * @param bound EXACT, LOWER or UPPER
+     * @param direction best direction or null
+     */
+    public void store(long key, int score, int depth, int bound, Direction direction) {
+        long data = (score & 0xFFFFFFFFL) | ((long) Math.min(depth, 255) << 32) | ((long) bound << 40)
+                | ((long) ((direction==null)?0:direction.ordinal()+1) << 42);
+        long bucket = key & bucketMask;
+        ByteBuffer segment = segments[(int) (bucket >>> bucketsPerSegmentBits)];
+        int offset = (int) (bucket & ((1L << bucketsPerSegmentBits)-1))*BUCKET_SIZE;
+
+        int position = offset;
+        long first = segment.getLong(offset+8);
+        long second = segment.getLong(offset+ENTRY_SIZE+8);
+        if((segment.getLong(offset+ENTRY_SIZE)^second)==key || (first!=0 && (segment.getLong(offset)^first)!=key && getDepth(second)<getDepth(first))) {
+            position = offset+ENTRY_SIZE; //same key in the second entry, or the second entry is shallower
+        }
+        segment.putLong(position, key^data);
+        segment.putLong(position+8, data);
+    }
+
+    /**
+     * Getter for the score of a data word.
+     *
+     * @param data
+     * @return
+     */
+    public static int getScore(long data) {
+        return (int) data;
+    }
+
+    /**
+     * Getter for the depth of a data word.
+     *
+     * @param data
+     * @return
+     */
+    public static int getDepth(long data) {
+        return (int) (data >>> 32) & 0xFF;
+    }
+
+    /**
+     * Getter for the bound of a data word.
+     *
+     * @param data
+     * @return EXACT, LOWER or UPPER
+     */
+    public static int getBound(long data) {
+        return (int) (data >>> 40) & 0x3;
+    }
+
+    /**
+     * Getter for the best direction of a data word.
+     *
+     * @param data
+     * @return the direction or null
+     */
+    public static Direction getDirection(long data) {
+        int code = (int) (data >>> 42) & 0x7;
+        return (code==0)?null:Direction.values()[code-1];
+    }
+
+    /**
+     * Getter for the size of the table.
+     *
+     * @return bytes
+     */
+    public long size() {
+        return (bucketMask+1)*BUCKET_SIZE;
+    }
+
+    /**
+     * Prints the size and the hit rate of the table.
+     */
+    public void print() {
+        long p = probes.sum();
+        System.out.println("transposition table: " + (size() >> 20) + " MB, " + hits.sum() + " hits of " + p + " probes ("
+                + ((p==0)?0:Math.round(hits.sum()*10000.0/p)/100.0) + "%)");
+    }
+}
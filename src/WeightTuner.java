@@ -0,0 +1,282 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the HeuristicWeights of the AI solver with a separable evolution
+ * strategy (CMA-ES restricted to a diagonal covariance). Every generation
+ * samples candidate weight vectors around the current mean, plays each one in
+ * parallel on the same fixed set of seeds, and moves the mean and the spread
+ * towards the best candidates.
+ *
+ * The fitness of a candidate is its success rate minus timeWeight times the CPU
+ * seconds it needs per game, so a cheaper search that wins as often is
+ * preferred.
+ *
+ * The best fitness on the training seeds is biased upwards: among many
+ * candidates, some are lucky on those seeds. So the candidates with the best
+ * training fitness and the default weights are played again on held-out seeds,
+ * and only a candidate that beats the defaults there is returned and saved to
+ * the weights file, where ConsoleGame.calculateAccuracy() picks it up.
+ *
+ * The search depth is not tuned, the candidates all search at the given depth.
+ */
+public class WeightTuner {
+
+    /**
+     * Spread of the first generation
+     */
+    private static final double INITIAL_SIGMA = 0.5;
+
+    /**
+     * Lower bound of the spread, so the search never stops exploring
+     */
+    private static final double MIN_SIGMA = 0.02;
+
+    /**
+     * Candidates with the best training fitness that are played on the held-out
+     * seeds
+     */
+    private static final int FINALISTS = 3;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int depth;
+    private final int numOfGames;
+    private final int heldOutGames;
+    private final int targetPoints;
+    private final long seed;
+    private final double timeWeight;
+
+    /**
+     * Constructor
+     *
+     * @param depth search depth of the candidates
+     * @param numOfGames games per candidate
+     * @param heldOutGames games per finalist on the held-out seeds, which follow
+     * the training seeds
+     * @param targetPoints
+     * @param seed seed of the first game of the fixed seed set
+     * @param timeWeight success rate traded for one CPU second per game
+     */
+    public WeightTuner(int depth, int numOfGames, int heldOutGames, int targetPoints, long seed, double timeWeight) {
+        this.depth = depth;
+        this.numOfGames = numOfGames;
+        this.heldOutGames = heldOutGames;
+        this.targetPoints = targetPoints;
+        this.seed = seed;
+        this.timeWeight = timeWeight;
+    }
+
+    /**
+     * A candidate and its measured performance
+     */
+    private static class Candidate {
+        private final double[] weights;
+        private double winRate;
+        private double cpuSeconds;
+        private double fitness;
+
+        Candidate(double[] weights) {
+            this.weights = weights;
+        }
+
+        HeuristicWeights toWeights() {
+            return new HeuristicWeights(weights[0], weights[1], weights[2]);
+        }
+    }
+
+    /**
+     * Plays a seed set with a candidate on the current thread.
+     *
+     * @param candidate
+     * @param firstSeed
+     * @param games
+     * @return the candidate with its performance filled in
+     * @throws CloneNotSupportedException
+     */
+    private Candidate evaluate(Candidate candidate, long firstSeed, int games) throws CloneNotSupportedException {
+        HeuristicWeights weights = candidate.toWeights();
+        long start = THREADS.getCurrentThreadCpuTime();
+        int wins=0;
+        for(int i=0;i<games;++i) {
+            Board theGame = new Board(targetPoints, firstSeed+i);
+            if(ConsoleGame.playGame(theGame, theBoard -> AIsolver.findBestMove(theBoard, depth, weights))==ActionStatus.WIN) {
+                ++wins;
+            }
+        }
+        candidate.winRate = (double) wins/games;
+        candidate.cpuSeconds = (THREADS.getCurrentThreadCpuTime()-start)/1e9/games;
+        candidate.fitness = candidate.winRate-timeWeight*candidate.cpuSeconds;
+        return candidate;
+    }
+
+    /**
+     * Waits for the evaluations of candidates.
+     */
+    private static List<Candidate> collect(List<Future<Candidate>> futures) throws CloneNotSupportedException, InterruptedException {
+        List<Candidate> candidates = new ArrayList<>();
+        for(Future<Candidate> future : futures) {
+            try {
+                candidates.add(future.get());
+            }
+            catch(ExecutionException e) {
+                if(e.getCause() instanceof CloneNotSupportedException) {
+                    throw (CloneNotSupportedException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Runs the evolution strategy, then plays the finalists and the default
+     * weights on the held-out seeds.
+     *
+     * @param generations
+     * @param populationSize candidates per generation
+     * @param threads
+     * @return the finalist with the best held-out fitness if it beats the default
+     * weights there, otherwise null
+     * @throws CloneNotSupportedException
+     * @throws InterruptedException
+     */
+    public HeuristicWeights tune(int generations, int populationSize, int threads) throws CloneNotSupportedException, InterruptedException {
+        int dimensions = 3;
+        int parents = Math.max(populationSize/2, 1);
+        double[] recombination = new double[parents]; //log-rank weights of the parents, summing to 1
+        double sum=0;
+        for(int k=0;k<parents;++k) {
+            recombination[k] = Math.log(parents+0.5)-Math.log(k+1);
+            sum += recombination[k];
+        }
+        for(int k=0;k<parents;++k) {
+            recombination[k] /= sum;
+        }
+
+        HeuristicWeights start = HeuristicWeights.DEFAULT;
+        double[] mean = {start.getScore(), start.getEmptyCells(), start.getClustering()};
+        double[] sigma = new double[dimensions];
+        Arrays.fill(sigma, INITIAL_SIGMA);
+        Random randomGenerator = new Random(seed);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        Candidate best = null;
+        List<Candidate> evaluated = new ArrayList<>();
+        try {
+            for(int generation=0;generation<generations;++generation) {
+                List<Future<Candidate>> futures = new ArrayList<>();
+                for(int c=0;c<populationSize;++c) {
+                    double[] weights = new double[dimensions];
+                    for(int d=0;d<dimensions;++d) {
+                        weights[d] = Math.max(mean[d]+sigma[d]*randomGenerator.nextGaussian(), 0);
+                    }
+                    Candidate candidate = new Candidate(weights);
+                    futures.add(pool.submit(() -> evaluate(candidate, seed, numOfGames)));
+                }
+                if(generation==0) {
+                    Candidate baseline = new Candidate(mean.clone());
+                    futures.add(pool.submit(() -> evaluate(baseline, seed, numOfGames))); //the starting point competes too
+                }
+
+                List<Candidate> population = collect(futures);
+                evaluated.addAll(population);
+                population.sort(Comparator.comparingDouble((Candidate candidate) -> candidate.fitness).reversed());
+                if(best==null || population.get(0).fitness>best.fitness) {
+                    best = population.get(0);
+                }
+
+                double[] newMean = new double[dimensions];
+                for(int k=0;k<parents;++k) {
+                    for(int d=0;d<dimensions;++d) {
+                        newMean[d] += recombination[k]*population.get(k).weights[d];
+                    }
+                }
+                for(int d=0;d<dimensions;++d) {
+                    double variance=0;
+                    for(int k=0;k<parents;++k) {
+                        double step = population.get(k).weights[d]-mean[d];
+                        variance += recombination[k]*step*step;
+                    }
+                    sigma[d] = Math.max(Math.sqrt(0.5*sigma[d]*sigma[d]+0.5*variance), MIN_SIGMA);
+                }
+                mean = newMean;
+
+                System.out.println("Generation " + (generation+1) + ": best " + best.toWeights() + " success rate " + round(best.winRate*100)
+                        + "% in " + round(best.cpuSeconds) + " CPU Seconds per game, mean " + new Candidate(mean).toWeights());
+            }
+
+            //replay the finalists and the defaults on seeds none of them was selected on
+            evaluated.sort(Comparator.comparingDouble((Candidate candidate) -> candidate.fitness).reversed());
+            List<Future<Candidate>> futures = new ArrayList<>();
+            Candidate defaults = new Candidate(new double[] {start.getScore(), start.getEmptyCells(), start.getClustering()});
+            futures.add(pool.submit(() -> evaluate(defaults, seed+numOfGames, heldOutGames)));
+            for(Candidate finalist : evaluated.subList(0, Math.min(FINALISTS, evaluated.size()))) {
+                Candidate replay = new Candidate(finalist.weights);
+                futures.add(pool.submit(() -> evaluate(replay, seed+numOfGames, heldOutGames)));
+                System.out.println("Finalist " + finalist.toWeights() + " training fitness " + round(finalist.fitness));
+            }
+            List<Candidate> heldOut = collect(futures);
+
+            Candidate winner = null;
+            for(Candidate candidate : heldOut) {
+                System.out.println("Held-out " + candidate.toWeights() + ((candidate==heldOut.get(0))?" (defaults)":"") + ": success rate "
+                        + round(candidate.winRate*100) + "% in " + round(candidate.cpuSeconds) + " CPU Seconds per game, fitness " + round(candidate.fitness));
+                if(candidate!=heldOut.get(0) && candidate.fitness>heldOut.get(0).fitness && (winner==null || candidate.fitness>winner.fitness)) {
+                    winner = candidate;
+                }
+            }
+            return (winner==null)?null:winner.toWeights();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value*100.0)/100.0;
+    }
+
+    /**
+     * Tunes the weights from the command line and saves them to the weights
+     * file if they beat the defaults on the held-out seeds: generations,
+     * population size, games per candidate and optionally the time weight, the
+     * seed and the held-out games (as many as the training games by default).
+     * Depth and max cell are read from the data file.
+     *
+     * @param args
+     * @throws CloneNotSupportedException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public static void main(String[] args) throws CloneNotSupportedException, InterruptedException, IOException {
+        if(args.length<3) {
+            System.out.println("Usage: WeightTuner <generations> <population> <games> [time weight] [seed] [held-out games]");
+            return;
+        }
+        double timeWeight = (args.length>3)?Double.parseDouble(args[3]):0.1;
+        long seed = (args.length>4)?Long.parseLong(args[4]):System.currentTimeMillis();
+        int games = Integer.parseInt(args[2]);
+        int heldOutGames = (args.length>5)?Integer.parseInt(args[5]):games;
+        WeightTuner tuner = new WeightTuner(DataModel.getDepth(), games, heldOutGames, DataModel.getMaxCell(), seed, timeWeight);
+
+        HeuristicWeights best = tuner.tune(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Runtime.getRuntime().availableProcessors());
+        if(best==null) {
+            System.out.println("No candidate beat the default weights on the held-out seeds, nothing saved");
+            return;
+        }
+        best.save(new File(HeuristicWeights.DEFAULT_FILE));
+        System.out.println("Saved " + best + " to '" + HeuristicWeights.DEFAULT_FILE + "'");
+    }
+}